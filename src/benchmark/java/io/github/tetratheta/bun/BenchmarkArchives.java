@@ -0,0 +1,133 @@
+package io.github.tetratheta.bun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/// Archives extracted by [BunZipExtractorBenchmark], created once and kept in the benchmark directory.
+final class BenchmarkArchives {
+  /// Release whose Linux x64 archive is downloaded when no archive is passed in.
+  static final String BUN_VERSION = "1.1.38";
+
+  /// Number of files in the synthetic archive.
+  static final int SYNTHETIC_ENTRIES = 5000;
+
+  private BenchmarkArchives() {
+  }
+
+  /// Directory holding the archives: `bun.benchmark.dir`, set by the Gradle task, or a temporary directory.
+  static Path workDir() throws IOException {
+    final String dir = System.getProperty("bun.benchmark.dir");
+    final Path path = dir != null ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "bun-benchmark");
+    return Files.createDirectories(path);
+  }
+
+  /// A real Bun release archive.
+  ///
+  /// This is the file named by `bun.benchmark.archive` if set (`-PbunArchive=...` of the Gradle task);
+  /// otherwise `bun-linux-x64.zip` of [#BUN_VERSION] is downloaded from GitHub once and verified
+  /// against the release's `SHASUMS256.txt`.
+  static File bun() throws IOException {
+    final String configured = System.getProperty("bun.benchmark.archive");
+    if (configured != null) {
+      final File file = new File(configured);
+      if (!file.isFile()) {
+        throw new IOException("bun.benchmark.archive does not exist: " + file);
+      }
+      return file;
+    }
+
+    final String asset = BunSystem.LINUX_X64.zipName();
+    final Path zip = workDir().resolve("bun-v" + BUN_VERSION + "-" + asset);
+    if (Files.isRegularFile(zip)) {
+      return zip.toFile();
+    }
+
+    final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+    final URI release = BunDistributionSource.github().resolve(BUN_VERSION, asset);
+    final String expected = BunChecksums.parse(get(client, BunDistributionSource.github().resolve(BUN_VERSION, BunChecksums.MANIFEST_NAME), HttpResponse.BodyHandlers.ofString())).get(asset);
+    if (expected == null) {
+      throw new IOException(BunChecksums.MANIFEST_NAME + " of Bun " + BUN_VERSION + " does not list " + asset);
+    }
+
+    final Path tmp = Files.createTempFile(zip.getParent(), asset, ".part");
+    final MessageDigest digest = sha256();
+    try (InputStream in = new DigestInputStream(get(client, release, HttpResponse.BodyHandlers.ofInputStream()), digest)) {
+      Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+    }
+    final String actual = BunHelpers.toHex(digest.digest());
+    if (!actual.equals(expected)) {
+      Files.delete(tmp);
+      throw new IOException("SHA-256 mismatch for " + release + ": expected " + expected + ", got " + actual);
+    }
+    Files.move(tmp, zip, StandardCopyOption.ATOMIC_MOVE);
+    return zip.toFile();
+  }
+
+  /// A deflated archive of [#SYNTHETIC_ENTRIES] files spread over 50 directories.
+  ///
+  /// Most files are a few KiB, every hundredth one is up to 1 MiB, as in a `node_modules` tree.
+  /// The content is generated from a fixed seed, so every run extracts the same archive.
+  static File synthetic() throws IOException {
+    final Path zip = workDir().resolve("synthetic-" + SYNTHETIC_ENTRIES + ".zip");
+    if (Files.isRegularFile(zip)) {
+      return zip.toFile();
+    }
+
+    final Random random = new Random(20_240_601);
+    final byte[] alphabet = "abcdefghijklmnopqrstuvwxyz{}();=.,\n ".getBytes(StandardCharsets.US_ASCII);
+    final Path tmp = Files.createTempFile(zip.getParent(), "synthetic", ".part");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tmp))) {
+      for (int i = 0; i < SYNTHETIC_ENTRIES; i++) {
+        final int size = i % 100 == 0 ? 256 * 1024 + random.nextInt(768 * 1024) : 512 + random.nextInt(16 * 1024);
+        final byte[] content = new byte[size];
+        for (int b = 0; b < size; b++) {
+          content[b] = alphabet[random.nextInt(alphabet.length)];
+        }
+        out.putNextEntry(new ZipEntry("package-" + i % 50 + "/lib/file-" + i + ".js"));
+        out.write(content);
+      }
+    }
+    Files.move(tmp, zip, StandardCopyOption.ATOMIC_MOVE);
+    return zip.toFile();
+  }
+
+  private static <T> T get(final HttpClient client, final URI uri, final HttpResponse.BodyHandler<T> body) throws IOException {
+    try {
+      final HttpResponse<T> response = client.send(HttpRequest.newBuilder(uri).GET().build(), body);
+      if (response.statusCode() != 200) {
+        if (response.body() instanceof InputStream in) {
+          in.close();
+        }
+        throw new IOException("HTTP " + response.statusCode() + " for " + uri);
+      }
+      return response.body();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while downloading " + uri, e);
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package io.github.tetratheta.bun;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/// Compares [BunZipExtractor] with the sequential extraction it replaced.
+///
+/// Archives:
+///   - `bun`: a real Bun release archive (see [BenchmarkArchives#bun()]), one large executable;
+///   - `synthetic`: many small and medium files (see [BenchmarkArchives#synthetic()]).
+///
+/// Implementations:
+///   - `legacy`: the former `BunHelpers.unzip(File, File)`, one entry after another through a buffered stream;
+///   - `extractor-1` and `extractor-4`: [BunZipExtractor] with one and four workers.
+///
+/// Each invocation extracts into a fresh directory; creating and deleting it is not measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class BunZipExtractorBenchmark {
+  @Param({"bun", "synthetic"})
+  public String archive;
+
+  @Param({"legacy", "extractor-1", "extractor-4"})
+  public String implementation;
+
+  private File zip;
+  private Path workDir;
+  private File destination;
+
+  @Setup(Level.Trial)
+  public void prepareArchive() throws IOException {
+    zip = "bun".equals(archive) ? BenchmarkArchives.bun() : BenchmarkArchives.synthetic();
+    workDir = Files.createTempDirectory(BenchmarkArchives.workDir(), "extract");
+  }
+
+  @Setup(Level.Invocation)
+  public void prepareDestination() {
+    destination = workDir.resolve(UUID.randomUUID().toString()).toFile();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDestination() throws IOException {
+    deleteRecursively(destination.toPath());
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteWorkDir() throws IOException {
+    deleteRecursively(workDir);
+  }
+
+  @Benchmark
+  public void extract() throws IOException {
+    switch (implementation) {
+      case "legacy" -> legacyUnzip(zip, destination);
+      case "extractor-1" -> new BunZipExtractor(1).extract(zip, destination);
+      case "extractor-4" -> new BunZipExtractor(4).extract(zip, destination);
+      default -> throw new IllegalArgumentException("Unknown implementation: " + implementation);
+    }
+  }
+
+  /// `BunHelpers.unzip(File, File)` as it was before [BunZipExtractor].
+  static void legacyUnzip(final File zip, final File destination) throws IOException {
+    try (final ZipFile zipFile = new ZipFile(zip)) {
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+      while (entries.hasMoreElements()) {
+        final ZipEntry contents = entries.nextElement();
+        final File output = new File(destination, contents.getName());
+
+        if (contents.isDirectory()) {
+          Files.createDirectories(output.toPath());
+          continue;
+        }
+
+        Files.createDirectories(output.getParentFile().toPath());
+        try (InputStream in = zipFile.getInputStream(contents); OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+          in.transferTo(out);
+        }
+      }
+    }
+  }
+
+  private static void deleteRecursively(final Path dir) throws IOException {
+    if (Files.notExists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
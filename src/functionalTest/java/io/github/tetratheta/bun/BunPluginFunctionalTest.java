@@ -0,0 +1,161 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunPluginFunctionalTest {
+  private static final String VERSION = "1.0.0";
+  private static final List<String> PROJECTS = List.of(":", ":sub1:", ":sub2:");
+
+  @TempDir
+  Path projectDir;
+
+  private Path mirror;
+
+  @BeforeEach
+  void release() throws IOException {
+    mirror = projectDir.resolve("mirror");
+    final Path releaseDir = mirror.resolve("bun-v" + VERSION);
+    Files.createDirectories(releaseDir);
+
+    final byte[] executable = new byte[64 * 1024];
+    new Random(1).nextBytes(executable);
+    final Path zip = releaseDir.resolve("bun-linux-x64.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      // A fixed timestamp keeps the archive, and so its checksum, the same in every test sharing the TestKit cache
+      final ZipEntry entry = new ZipEntry("bun-linux-x64/bun");
+      entry.setTime(0);
+      out.putNextEntry(entry);
+      out.write(executable);
+    }
+    try (OutputStream out = Files.newOutputStream(releaseDir.resolve("SHASUMS256.txt"))) {
+      out.write((sha256(Files.readAllBytes(zip)) + "  bun-linux-x64.zip\n").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  void reusesTheConfigurationCache() throws IOException {
+    write("settings.gradle", "rootProject.name = 'consumer'\n");
+    write("build.gradle", buildScript());
+
+    final BuildResult first = run("bunSetup", "--configuration-cache");
+    assertTrue(first.getOutput().contains("Configuration cache entry stored"), first.getOutput());
+    assertEquals(TaskOutcome.SUCCESS, first.task(":bunSetup").getOutcome());
+    assertTrue(Files.isRegularFile(projectDir.resolve(".gradle/bun/" + VERSION + "/bun-linux-x64/bun")), "Bun was not installed");
+
+    final BuildResult second = run("bunSetup", "--configuration-cache");
+    assertTrue(second.getOutput().contains("Configuration cache entry reused"), second.getOutput());
+    assertEquals(TaskOutcome.UP_TO_DATE, second.task(":bunSetup").getOutcome());
+  }
+
+  @Test
+  void installsIntoEachProjectAndRestoresFromTheBuildCache() throws IOException {
+    write("settings.gradle", "rootProject.name = 'consumer'\ninclude 'sub1', 'sub2'\nbuildCache { local { directory = file('build-cache') } }\n");
+    write("build.gradle", buildScript());
+    write("sub1/build.gradle", buildScript());
+    write("sub2/build.gradle", buildScript());
+
+    final BuildResult first = run("bunSetup", "--build-cache");
+    for (String project : PROJECTS) {
+      // Identical inputs share a cache key, so the projects after the first one may already restore it
+      assertTrue(Set.of(TaskOutcome.SUCCESS, TaskOutcome.FROM_CACHE).contains(first.task(project + "bunSetup").getOutcome()), project);
+      assertTrue(Files.isRegularFile(bun(project)), "Bun was not installed for " + project);
+    }
+
+    for (String project : PROJECTS) {
+      deleteRecursively(bun(project).getParent().getParent().getParent());
+    }
+    final BuildResult second = run("bunSetup", "--build-cache");
+    for (String project : PROJECTS) {
+      assertEquals(TaskOutcome.FROM_CACHE, second.task(project + "bunSetup").getOutcome(), project);
+      assertTrue(Files.isRegularFile(bun(project)), "Bun was not restored for " + project);
+    }
+  }
+
+  @Test
+  void supportsIsolatedProjects() throws IOException {
+    write("settings.gradle", "rootProject.name = 'consumer'\ninclude 'sub1', 'sub2'\n");
+    write("build.gradle", buildScript());
+    write("sub1/build.gradle", buildScript());
+    // Projects no longer share an installation, so they may extract different files
+    write("sub2/build.gradle", buildScript() + "bun.extract = ['**']\n");
+
+    final BuildResult result = run("bunSetup", "-Dorg.gradle.unsafe.isolated-projects=true");
+
+    assertTrue(result.getOutput().contains("Configuration cache entry stored"), result.getOutput());
+    for (String project : PROJECTS) {
+      assertEquals(TaskOutcome.SUCCESS, result.task(project + "bunSetup").getOutcome(), project);
+      assertTrue(Files.isRegularFile(bun(project)), "Bun was not installed for " + project);
+    }
+  }
+
+  /// The installed executable of `project`, given by its path prefix such as `":sub1:"`.
+  private Path bun(final String project) {
+    return projectDir.resolve(project.substring(1).replace(':', '/')).resolve(".gradle/bun/" + VERSION + "/bun-linux-x64/bun");
+  }
+
+  /// A build script installing [#VERSION] for Linux x64 from the local mirror only.
+  private String buildScript() {
+    return String.join("\n", List.of(
+      "plugins { id 'io.github.tetratheta.bun' }",
+      "bun {",
+      "  version = '" + VERSION + "'",
+      "  system = io.github.tetratheta.bun.BunSystem.LINUX_X64",
+      "  sources = [io.github.tetratheta.bun.BunDistributionSource.directory(file('" + escape(mirror) + "'))]",
+      "}",
+      ""));
+  }
+
+  private BuildResult run(final String... arguments) {
+    return GradleRunner.create().withProjectDir(projectDir.toFile()).withPluginClasspath().withArguments(arguments).forwardOutput().build();
+  }
+
+  private void write(final String file, final String content) throws IOException {
+    final Path path = projectDir.resolve(file);
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, content);
+  }
+
+  private static void deleteRecursively(final Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static String escape(final Path path) {
+    return path.toString().replace("\\", "\\\\").replace("'", "\\'");
+  }
+
+  private static String sha256(final byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
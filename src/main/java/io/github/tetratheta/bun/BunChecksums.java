@@ -0,0 +1,143 @@
+package io.github.tetratheta.bun;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// Published SHA-256 checksums of Bun release assets.
+///
+/// Every Bun release ships a machine-readable `SHASUMS256.txt` manifest listing the digest of
+/// each asset. The manifest is fetched once per version, parsed into a map of asset name to
+/// digest, and kept both in memory and next to the cached distributions:
+/// ```
+/// <cacheRoot>/<version>/SHASUMS256.txt
+/// ```
+/// Verifying any [BunSystem] of a version therefore costs no network after the first fetch.
+/// The manifest is taken from the first [BunDistributionSource] that serves it.
+/// The manifest of `"latest"` is only kept in memory, since it changes with every release.
+public class BunChecksums {
+  /// File name of the checksum manifest published with every Bun release.
+  public static final String MANIFEST_NAME = "SHASUMS256.txt";
+
+  private static final Pattern LINE = Pattern.compile("^([0-9a-fA-F]{64})\\s+\\*?(\\S+)\\s*$");
+
+  private final File cacheRoot;
+  private final Map<String, Map<String, String>> manifests = new ConcurrentHashMap<>();
+
+  /// Creates a checksum store backed by the given cache root.
+  ///
+  /// @param cacheRoot the root directory of the [BunDistributionCache]
+  public BunChecksums(final File cacheRoot) {
+    this.cacheRoot = cacheRoot;
+  }
+
+  /// Returns the published SHA-256 of a release asset.
+  ///
+  /// @param version   the normalized Bun version
+  /// @param assetName the exact asset file name (e.g. `bun-linux-x64.zip`)
+  /// @param transport the transport used if the manifest has to be fetched
+  /// @param sources   the sources to fetch the manifest from, tried in order
+  /// @param budget    the retry policy and deadline for fetching
+  /// @return the lowercase hex digest, or empty if the manifest has no such asset
+  /// @throws IOException if the manifest cannot be fetched from any source
+  public Optional<String> lookup(final String version, final String assetName, final BunHttpTransport transport, final List<BunDistributionSource> sources, final BunRetryPolicy.Budget budget) throws IOException {
+    return Optional.ofNullable(manifest(version, transport, sources, budget).get(assetName));
+  }
+
+  /// Returns the parsed manifest of a version, fetching it only when neither the in-memory
+  /// nor the on-disk copy exists.
+  ///
+  /// @param version   the normalized Bun version
+  /// @param transport the transport used if the manifest has to be fetched
+  /// @param sources   the sources to fetch the manifest from, tried in order
+  /// @param budget    the retry policy and deadline for fetching
+  /// @return an unmodifiable map of asset name to lowercase hex digest
+  /// @throws IOException if the manifest cannot be fetched from any source, or cannot be stored
+  public Map<String, String> manifest(final String version, final BunHttpTransport transport, final List<BunDistributionSource> sources, final BunRetryPolicy.Budget budget) throws IOException {
+    final Map<String, String> known = manifests.get(version);
+    if (known != null) {
+      return known;
+    }
+
+    final boolean persistent = !"latest".equals(version);
+    final File file = new File(cacheRoot, version + File.separator + MANIFEST_NAME);
+    final String text;
+
+    if (persistent && file.isFile()) {
+      text = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+    } else {
+      text = fetch(version, transport, sources, budget);
+
+      if (persistent) {
+        write(file, text);
+      }
+    }
+
+    final Map<String, String> parsed = parse(text);
+    manifests.put(version, parsed);
+    return parsed;
+  }
+
+  /// Parses a `sha256sum`-style manifest into a map of file name to lowercase digest.
+  ///
+  /// Lines that do not look like `<64 hex digits> <file name>` are ignored.
+  ///
+  /// @param text the manifest contents
+  /// @return an unmodifiable map of file name to lowercase hex digest
+  public static Map<String, String> parse(final String text) {
+    final Map<String, String> digests = new HashMap<>();
+
+    for (String line : text.split("\\R")) {
+      final Matcher matcher = LINE.matcher(line.trim());
+      if (matcher.matches()) {
+        digests.put(matcher.group(2), matcher.group(1).toLowerCase(Locale.ROOT));
+      }
+    }
+
+    return Map.copyOf(digests);
+  }
+
+  private static String fetch(final String version, final BunHttpTransport transport, final List<BunDistributionSource> sources, final BunRetryPolicy.Budget budget) throws IOException {
+    IOException failure = null;
+
+    for (BunDistributionSource source : sources) {
+      try {
+        final URI uri = source.resolve(version, MANIFEST_NAME);
+        return budget.call("Fetching " + uri, attempt -> transport.getString(uri));
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+
+    throw failure != null ? failure : new IOException("not cached and no reachable source is configured");
+  }
+
+  private static void write(final File file, final String text) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+
+    final Path tmp = Files.createTempFile(file.getParentFile().toPath(), MANIFEST_NAME, ".tmp");
+    Files.writeString(tmp, text, StandardCharsets.UTF_8);
+    try {
+      Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
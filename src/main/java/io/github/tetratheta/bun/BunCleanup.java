@@ -0,0 +1,359 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/// Removes Bun installations and cached distributions that a [BunRetentionPolicy] no longer keeps.
+///
+/// Every use of an installation or cache entry touches a marker, whose modification time is
+/// its last use:
+/// ```
+/// <bunRoot>/<version>/.<platform>.used
+/// <gradleUserHome>/caches/bun/<version>/<platform>/<entry>/.used
+/// ```
+/// Markers are touched at most once an hour, so frequent use costs one `stat`. Using an
+/// installation also touches the marker of the cache entry it was linked from (see
+/// [BunInstallation#entryDir()]), and an entry that an installation symlinks into is kept as
+/// long as that installation exists (see [BunDistributionCache#isLinked(File)]).
+///
+/// [BunInstallService] runs a cleanup at the end of every build that used it, but each Bun root
+/// and the shared cache are cleaned at most once a day (tracked by a `.cleanup` file in them),
+/// like Gradle's own cache cleanup.
+///
+/// An installation is removed while holding the lock that guards installing it, and a cache
+/// entry while holding the lock that guards downloads into it; if a running build holds that
+/// lock, the installation or entry is skipped. Bun tasks share the install lock while Bun runs,
+/// so a running installation is never removed. It is first renamed to a hidden sibling, so no
+/// build ever sees it half-deleted. Files a running process keeps open (as Windows does for
+/// executables) make the removal fail, in which case it is retried by a later cleanup.
+public class BunCleanup {
+  /// Suffix of the last-use markers of installations.
+  static final String USED_SUFFIX = ".used";
+
+  private static final Logger LOGGER = Logging.getLogger(BunCleanup.class);
+  private static final String CLEANUP_MARKER = ".cleanup";
+  private static final Duration CLEANUP_INTERVAL = Duration.ofDays(1);
+  private static final Duration TOUCH_INTERVAL = Duration.ofHours(1);
+
+  private final BunRetentionPolicy policy;
+  private final Set<String> inUse;
+  private final long now;
+
+  /// Creates a cleanup applying `policy`.
+  ///
+  /// @param policy which installations and entries are kept
+  /// @param inUse  installations and entries used by the current build, which are always kept
+  public BunCleanup(final BunRetentionPolicy policy, final Set<File> inUse) {
+    this.policy = policy;
+    this.inUse = new HashSet<>();
+    for (File file : inUse) {
+      this.inUse.add(file.getAbsolutePath());
+    }
+    this.now = System.currentTimeMillis();
+  }
+
+  /// Records a use by touching a marker file, creating it if needed.
+  ///
+  /// @param marker the marker file
+  /// @return `false` if the marker was touched within the last hour and was left alone
+  public static boolean markUsed(final File marker) {
+    final long modified = marker.lastModified();
+    if (modified != 0 && System.currentTimeMillis() - modified < TOUCH_INTERVAL.toMillis()) {
+      return false;
+    }
+
+    try {
+      if (modified == 0) {
+        Files.createDirectories(marker.getAbsoluteFile().getParentFile().toPath());
+        Files.write(marker.toPath(), new byte[0]);
+      } else if (!marker.setLastModified(System.currentTimeMillis())) {
+        LOGGER.info("Could not touch {}", marker);
+      }
+    } catch (IOException e) {
+      LOGGER.info("Could not touch {}: {}", marker, e.getMessage());
+    }
+    return true;
+  }
+
+  /// Records a use of an installation and of the cache entry it was linked from.
+  ///
+  /// `install.json` is only read when the installation's own marker is due, so at most once an hour.
+  ///
+  /// @param platformDir the platform directory of the installation
+  public static void markInstallUsed(final File platformDir) {
+    if (markUsed(installMarker(platformDir))) {
+      BunInstallation.read(platformDir).flatMap(BunInstallation::entryDir).ifPresent(BunDistributionCache::markUsed);
+    }
+  }
+
+  /// Returns the last-use marker of an installation.
+  ///
+  /// It sits next to the platform directory, so touching it never changes the installation itself.
+  ///
+  /// @param platformDir the platform directory of the installation (see [BunInstallation#platformDir(File, String, BunSystem)])
+  /// @return `<bunRoot>/<version>/.<platform>.used`
+  public static File installMarker(final File platformDir) {
+    return new File(platformDir.getParentFile(), "." + platformDir.getName() + USED_SUFFIX);
+  }
+
+  /// Removes the installations under a Bun root directory that the policy does not keep.
+  ///
+  /// Does nothing if the root was cleaned within the last day.
+  ///
+  /// @param bunRoot the Bun root directory
+  /// @throws IOException if the root cannot be read
+  public void cleanInstalls(final File bunRoot) throws IOException {
+    if (!due(bunRoot)) {
+      return;
+    }
+
+    final List<Candidate> candidates = new ArrayList<>();
+    for (File versionDir : children(bunRoot)) {
+      for (File platformDir : children(versionDir)) {
+        final File marker = installMarker(platformDir);
+        final long lastUsed = firstModified(marker, new File(platformDir, BunInstallation.FILE_NAME), platformDir);
+        final long bytes = sizeOf(platformDir);
+        if (platformDir.isDirectory()) {
+          candidates.add(new Candidate(platformDir, versionDir.getName(), lastUsed, bytes, BunInstallation.lockFile(platformDir), List.of(marker, BunInstallation.verifiedMarker(platformDir))));
+        }
+      }
+      sweepLeftovers(versionDir);
+    }
+    sweepLeftovers(bunRoot);
+
+    remove(candidates, "installation", bunRoot);
+  }
+
+  /// Removes the entries of the shared distribution cache that the policy does not keep,
+  /// together with abandoned partial downloads.
+  ///
+  /// Does nothing if the cache was cleaned within the last day.
+  ///
+  /// @param cache the shared distribution cache
+  /// @throws IOException if the cache cannot be read
+  public void cleanCache(final BunDistributionCache cache) throws IOException {
+    if (!due(cache.getRoot())) {
+      return;
+    }
+
+    final List<Candidate> candidates = new ArrayList<>();
+    for (File versionDir : children(cache.getRoot())) {
+      for (File systemDir : children(versionDir)) {
+        final File lockFile = new File(systemDir, ".lock");
+        for (File entry : children(systemDir)) {
+          final long lastUsed = Math.max(new File(entry, BunDistributionCache.USED_MARKER).lastModified(), new File(entry, BunDistributionCache.COMPLETE_MARKER).lastModified());
+          final long bytes = sizeOf(entry);
+          if (!entry.isDirectory()) {
+            continue;
+          }
+          if (BunDistributionCache.isLinked(entry)) {
+            // Installations made of symlinks would break without it
+            inUse.add(entry.getAbsolutePath());
+          }
+          candidates.add(new Candidate(entry, versionDir.getName(), lastUsed, bytes, lockFile, List.of()));
+        }
+        sweepPartialDownloads(systemDir, lockFile);
+        sweepLeftovers(systemDir);
+      }
+    }
+
+    remove(candidates, "cached distribution", cache.getRoot());
+  }
+
+  /// Returns the candidates the policy does not keep.
+  ///
+  /// @param candidates the installations or cache entries to consider
+  /// @return the candidates to remove, least recently used last
+  List<Candidate> select(final List<Candidate> candidates) {
+    final List<Candidate> sorted = new ArrayList<>(candidates);
+    sorted.sort(Comparator.comparingLong((Candidate c) -> isInUse(c) ? Long.MAX_VALUE : c.lastUsed()).reversed());
+
+    final Set<String> keptVersions = new HashSet<>();
+    final List<Candidate> evicted = new ArrayList<>();
+    long keptBytes = 0;
+    for (Candidate candidate : sorted) {
+      final boolean recent = now - candidate.lastUsed() <= policy.maxUnused().toMillis();
+      final boolean versionFits = keptVersions.contains(candidate.version()) || keptVersions.size() < policy.maxVersions();
+      final boolean sizeFits = candidate.bytes() <= policy.maxBytes() - keptBytes;
+
+      if (isInUse(candidate) || (recent && versionFits && sizeFits)) {
+        keptVersions.add(candidate.version());
+        keptBytes += candidate.bytes();
+      } else {
+        evicted.add(candidate);
+      }
+    }
+    return evicted;
+  }
+
+  private void remove(final List<Candidate> candidates, final String kind, final File root) {
+    int removed = 0;
+    long freed = 0;
+    for (Candidate candidate : select(candidates)) {
+      if (remove(candidate)) {
+        LOGGER.info("Removed unused Bun {} {} (last used {})", kind, candidate.dir(), Instant.ofEpochMilli(candidate.lastUsed()));
+        removed++;
+        freed += candidate.bytes();
+      }
+    }
+
+    if (removed > 0) {
+      LOGGER.lifecycle("Removed {} unused Bun {}{} ({}) from {}", removed, kind, removed == 1 ? "" : "s", String.format(Locale.ROOT, "%.1f MiB", freed / (1024.0 * 1024.0)), root);
+    }
+  }
+
+  private static boolean remove(final Candidate candidate) {
+    try {
+      final Optional<BunFileLock> lock = BunFileLock.tryAcquire(candidate.lockFile());
+      if (lock.isEmpty()) {
+        LOGGER.info("Keeping {}, it is locked by a running build", candidate.dir());
+        return false;
+      }
+
+      try {
+        final File trash = new File(candidate.dir().getParentFile(), ".deleting-" + UUID.randomUUID());
+        Files.move(candidate.dir().toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        for (File marker : candidate.markers()) {
+          Files.deleteIfExists(marker.toPath());
+        }
+        BunDistributionCache.deleteRecursively(trash);
+        return true;
+      } finally {
+        lock.get().close();
+      }
+    } catch (IOException e) {
+      LOGGER.info("Could not remove {}: {}", candidate.dir(), e.getMessage());
+      return false;
+    }
+  }
+
+  /// Deletes partial downloads that were not resumed within the retention period.
+  private void sweepPartialDownloads(final File systemDir, final File lockFile) {
+    final File[] parts = systemDir.listFiles(f -> f.isFile() && f.getName().contains(".part") && now - f.lastModified() > policy.maxUnused().toMillis());
+    if (parts == null || parts.length == 0) {
+      return;
+    }
+
+    try {
+      final Optional<BunFileLock> lock = BunFileLock.tryAcquire(lockFile);
+      if (lock.isEmpty()) {
+        return;
+      }
+      try {
+        for (File part : parts) {
+          Files.deleteIfExists(part.toPath());
+        }
+      } finally {
+        lock.get().close();
+      }
+    } catch (IOException e) {
+      LOGGER.info("Could not remove partial downloads in {}: {}", systemDir, e.getMessage());
+    }
+  }
+
+  /// Deletes staging and half-deleted directories that interrupted builds left behind.
+  private void sweepLeftovers(final File dir) {
+    final File[] leftovers = dir.listFiles(f -> f.isDirectory() && (f.getName().startsWith(".staging-") || f.getName().startsWith(".deleting-")) && now - f.lastModified() > CLEANUP_INTERVAL.toMillis());
+    for (File leftover : leftovers == null ? new File[0] : leftovers) {
+      try {
+        BunDistributionCache.deleteRecursively(leftover);
+      } catch (IOException e) {
+        LOGGER.info("Could not remove {}: {}", leftover, e.getMessage());
+      }
+    }
+  }
+
+  private boolean isInUse(final Candidate candidate) {
+    return inUse.contains(candidate.dir().getAbsolutePath());
+  }
+
+  /// Returns whether a root is due for cleanup, and if so records that it is being cleaned now.
+  private boolean due(final File root) throws IOException {
+    if (!root.isDirectory()) {
+      return false;
+    }
+
+    final File marker = new File(root, CLEANUP_MARKER);
+    final long last = marker.lastModified();
+    if (last != 0 && now - last < CLEANUP_INTERVAL.toMillis()) {
+      return false;
+    }
+
+    if (last == 0) {
+      Files.write(marker.toPath(), new byte[0]);
+    } else if (!marker.setLastModified(now)) {
+      LOGGER.info("Could not touch {}", marker);
+    }
+    return true;
+  }
+
+  private static List<File> children(final File dir) {
+    final File[] children = dir.listFiles(f -> f.isDirectory() && !f.getName().startsWith("."));
+    return children == null ? List.of() : List.of(children);
+  }
+
+  private static long firstModified(final File... files) {
+    for (File file : files) {
+      final long modified = file.lastModified();
+      if (modified != 0) {
+        return modified;
+      }
+    }
+    return 0;
+  }
+
+  /// Sums the file sizes below `dir`; files and directories removed meanwhile are left out.
+  private static long sizeOf(final File dir) throws IOException {
+    final long[] total = {0};
+    Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          total[0] += attrs.size();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return total[0];
+  }
+
+  /// An installation or cache entry considered for removal.
+  ///
+  /// @param dir      the directory holding it
+  /// @param version  the Bun version it belongs to
+  /// @param lastUsed when it was last used, in epoch milliseconds
+  /// @param bytes    the size of its files
+  /// @param lockFile the lock guarding its creation
+  /// @param markers  markers kept outside of `dir`, removed with it
+  record Candidate(File dir, String version, long lastUsed, long bytes, File lockFile, List<File> markers) {
+  }
+}
@@ -0,0 +1,196 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/// [ValueSource] that finds a Bun executable already installed on this machine in the requested version.
+///
+/// These locations are probed in order:
+///   - every directory on `PATH`;
+///   - `$BUN_INSTALL/bin`;
+///   - `~/.bun/bin`, where the official installer puts Bun.
+///
+/// The version of each executable found is asked with a single `bun --version` call. The answer
+/// is remembered for every build on the machine, keyed by the path, modification time and size
+/// of the executable, so a binary is only run again after it was replaced:
+/// ```
+/// <gradleUserHome>/caches/bun/discovered.properties
+/// ```
+/// The first executable reporting exactly the requested version is returned; without one, the
+/// value is absent and Bun is installed as usual.
+///
+/// Using a [ValueSource] lets Gradle's Configuration Cache treat the discovered executable as an
+/// external input: a cached configuration is dropped as soon as that executable is replaced.
+public abstract class BunDiscoverySource implements ValueSource<String, BunDiscoverySource.Params> {
+  private static final Logger LOGGER = Logging.getLogger(BunDiscoverySource.class);
+  private static final long VERSION_TIMEOUT_SECONDS = 10;
+
+  /// Parameters of the [BunDiscoverySource].
+  public interface Params extends ValueSourceParameters {
+    /// The exact Bun version to look for.
+    ///
+    /// @return a property representing the resolved version
+    Property<String> getVersion();
+
+    /// File name of the Bun executable (`bun` or `bun.exe`).
+    ///
+    /// @return a property representing the executable name
+    Property<String> getExeName();
+
+    /// File the versions of probed executables are remembered in.
+    ///
+    /// @return a file property pointing to the version cache
+    RegularFileProperty getCacheFile();
+  }
+
+  @Override
+  public String obtain() {
+    final String version = getParameters().getVersion().get();
+    final String exeName = getParameters().getExeName().get();
+    final File cacheFile = getParameters().getCacheFile().get().getAsFile();
+    final Properties known = read(cacheFile);
+    boolean changed = false;
+
+    try {
+      for (File dir : candidateDirs()) {
+        final File exe = new File(dir, exeName);
+        if (!exe.isFile() || !exe.canExecute()) {
+          continue;
+        }
+
+        final String key = exe.getAbsolutePath();
+        final String stamp = exe.lastModified() + "," + exe.length() + ",";
+        String found = known.getProperty(key, "");
+        if (!found.startsWith(stamp)) {
+          found = stamp + versionOf(exe);
+          known.setProperty(key, found);
+          changed = true;
+        }
+
+        final String reported = found.substring(stamp.length());
+        if (version.equals(reported)) {
+          LOGGER.info("Found Bun {} at {}", version, exe);
+          return key;
+        }
+        LOGGER.info("Ignoring Bun at {}: version {} instead of {}", exe, reported.isEmpty() ? "unknown" : reported, version);
+      }
+      return null;
+    } finally {
+      if (changed) {
+        write(known, cacheFile);
+      }
+    }
+  }
+
+  private static List<File> candidateDirs() {
+    final Set<File> dirs = new LinkedHashSet<>();
+    final String path = System.getenv("PATH");
+    if (path != null) {
+      for (String entry : path.split(File.pathSeparator)) {
+        if (!entry.isBlank()) {
+          dirs.add(new File(entry.trim()));
+        }
+      }
+    }
+
+    final String bunInstall = System.getenv("BUN_INSTALL");
+    if (bunInstall != null && !bunInstall.isBlank()) {
+      dirs.add(new File(bunInstall, "bin"));
+    }
+    dirs.add(new File(System.getProperty("user.home"), ".bun" + File.separator + "bin"));
+    return new ArrayList<>(dirs);
+  }
+
+  /// Runs `bun --version`, returning the reported version without build metadata, or an empty
+  /// string if the executable does not answer like Bun.
+  ///
+  /// The output goes to a temporary file that is only read once the process has exited, so an
+  /// executable that never exits is killed once the timeout passes instead of blocking the read.
+  private static String versionOf(final File exe) {
+    Path output = null;
+    try {
+      output = Files.createTempFile("bun-version", ".txt");
+      final Process process = new ProcessBuilder(exe.getAbsolutePath(), "--version").redirectErrorStream(true).redirectOutput(output.toFile()).start();
+      process.getOutputStream().close();
+      if (!process.waitFor(VERSION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.info("Ignoring {}: no answer to --version within {} seconds", exe, VERSION_TIMEOUT_SECONDS);
+        process.destroyForcibly();
+        return "";
+      }
+
+      final String reported;
+      try (InputStream in = Files.newInputStream(output)) {
+        reported = new String(in.readNBytes(256), StandardCharsets.UTF_8).trim();
+      }
+      if (process.exitValue() != 0 || !reported.matches("\\d+\\.\\d+\\.\\d+\\S*")) {
+        return "";
+      }
+      final int metadata = reported.indexOf('+');
+      return metadata < 0 ? reported : reported.substring(0, metadata);
+    } catch (IOException e) {
+      LOGGER.info("Could not run {} --version: {}", exe, e.getMessage());
+      return "";
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "";
+    } finally {
+      if (output != null) {
+        try {
+          Files.deleteIfExists(output);
+        } catch (IOException e) {
+          LOGGER.debug("Could not delete {}: {}", output, e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static Properties read(final File file) {
+    final Properties props = new Properties();
+    if (file.isFile()) {
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+        props.load(in);
+      } catch (IOException | IllegalArgumentException e) {
+        // A damaged cache only costs one more version check per executable
+        props.clear();
+      }
+    }
+    return props;
+  }
+
+  private static void write(final Properties props, final File file) {
+    try {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+      final Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        props.store(out, "Versions reported by Bun executables: <modified>,<size>,<version>");
+      }
+      try {
+        Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not write {}: {}", file, e.getMessage());
+    }
+  }
+}
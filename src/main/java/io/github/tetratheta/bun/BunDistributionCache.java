@@ -0,0 +1,440 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.LinkOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/// Machine-wide, content-addressed store of extracted Bun distributions.
+///
+/// Every project on the same machine resolves Bun through this store, so a given
+/// archive is downloaded and extracted only once. Entries live under the Gradle
+/// user home and are keyed by version, [BunSystem] and the SHA-256 of the archive:
+/// ```
+/// <gradleUserHome>/caches/bun/<version>/<platform>/<sha256>/
+/// <gradleUserHome>/caches/bun/<version>/<platform>/<sha256>-<manifest id>/
+/// ```
+/// The second form holds a partial extraction selected by a [BunExtractionManifest]; a full
+/// entry also satisfies any partial request.
+/// A per-project installation is a mirror of an entry in which every file is a
+/// hardlink (or, where hardlinks are not possible, a symlink or copy) to the cached file.
+/// An installation made of symlinks breaks when its entry is removed, so it is registered in
+/// the entry's `.links` directory, and [BunCleanup] keeps the entry while it exists.
+public class BunDistributionCache {
+  private static final Logger LOGGER = Logging.getLogger(BunDistributionCache.class);
+
+  /// Marker written into an entry once extraction has finished; holds the archive digest.
+  static final String COMPLETE_MARKER = ".complete";
+
+  /// Marker written into an entry once its digest matched the published checksum.
+  static final String VERIFIED_MARKER = ".verified";
+
+  /// Marker touched whenever an entry is used; its modification time drives [BunCleanup].
+  static final String USED_MARKER = ".used";
+
+  /// Directory in an entry holding one file per installation that symlinks into the entry.
+  static final String LINKS_DIR = ".links";
+
+  /// How long a fresh link registration counts before its installation has written `install.json`.
+  private static final long LINK_GRACE_MILLIS = 24L * 60 * 60 * 1000;
+
+  private final File root;
+
+  /// Creates a cache rooted at the given directory.
+  ///
+  /// @param root the cache root directory (created lazily)
+  public BunDistributionCache(final File root) {
+    this.root = root;
+  }
+
+  /// Returns the default cache root for the given Gradle user home.
+  ///
+  /// @param gradleUserHome the Gradle user home directory
+  /// @return the directory under which Bun distributions are cached
+  public static File defaultRoot(final File gradleUserHome) {
+    return new File(gradleUserHome, "caches" + File.separator + "bun");
+  }
+
+  /// Returns the cache root directory.
+  ///
+  /// @return the cache root
+  public File getRoot() {
+    return root;
+  }
+
+  /// Returns the directory holding all entries for a version/system combination.
+  ///
+  /// @param version the normalized Bun version
+  /// @param system  the target system/platform
+  /// @return the directory containing one subdirectory per archive digest
+  public File systemDir(final String version, final BunSystem system) {
+    return new File(root, version + File.separator + BunHelpers.stripZip(system.zipName()));
+  }
+
+  /// Returns the entry directory for a specific archive digest and extraction manifest.
+  ///
+  /// @param version  the normalized Bun version
+  /// @param system   the target system/platform
+  /// @param sha256   the lowercase hex SHA-256 of the archive
+  /// @param manifest which entries the directory holds
+  /// @return the entry directory (which may not exist yet)
+  public File entryDir(final String version, final BunSystem system, final String sha256, final BunExtractionManifest manifest) {
+    return new File(systemDir(version, system), manifest.isAll() ? sha256 : sha256 + "-" + manifest.id());
+  }
+
+  /// Returns the lock file guarding downloads into [#systemDir(String, BunSystem)].
+  ///
+  /// @param version the normalized Bun version
+  /// @param system  the target system/platform
+  /// @return the lock file (which may not exist yet)
+  public File lockFile(final String version, final BunSystem system) {
+    return new File(systemDir(version, system), ".lock");
+  }
+
+  /// Finds a completed entry for the given version and system holding at least the entries of `manifest`.
+  ///
+  /// If several digests are present (for example because `"latest"` moved), the most
+  /// recently completed one is returned.
+  ///
+  /// @param version  the normalized Bun version
+  /// @param system   the target system/platform
+  /// @param manifest which entries are needed
+  /// @return the completed entry directory, or empty if none is cached
+  public Optional<File> find(final String version, final BunSystem system, final BunExtractionManifest manifest) {
+    final String partial = "-" + manifest.id();
+    final File[] entries = systemDir(version, system).listFiles(f -> !f.getName().startsWith(".") && (f.getName().indexOf('-') < 0 || (!manifest.isAll() && f.getName().endsWith(partial))) && isComplete(f));
+
+    if (entries == null || entries.length == 0) {
+      return Optional.empty();
+    }
+
+    return Stream.of(entries).max(Comparator.comparingLong(f -> new File(f, COMPLETE_MARKER).lastModified()));
+  }
+
+  /// Adds a downloaded archive to the cache.
+  ///
+  /// The entries selected by `manifest` are extracted into a temporary sibling directory, which
+  /// is then moved into place under the archive digest. If another build already committed the
+  /// same entry, the existing one is reused.
+  ///
+  /// @param version  the normalized Bun version
+  /// @param system   the target system/platform
+  /// @param zip      the downloaded archive
+  /// @param sha256   the lowercase hex SHA-256 of the archive, as computed during download
+  /// @param manifest which entries to extract
+  /// @return the completed entry directory
+  /// @throws IOException if the archive cannot be extracted or committed
+  public File store(final String version, final BunSystem system, final File zip, final String sha256, final BunExtractionManifest manifest) throws IOException {
+    final File entry = entryDir(version, system, sha256, manifest);
+    if (isComplete(entry)) {
+      return entry;
+    }
+
+    final File staging = newStaging(version, system);
+    try {
+      report(zip.getName(), BunHelpers.unzip(zip, staging, manifest));
+      return commit(staging, entry, system, sha256);
+    } finally {
+      deleteRecursively(staging);
+    }
+  }
+
+  /// Adds an archive to the cache while it is still being downloaded.
+  ///
+  /// The stream is hashed and unpacked in a single pass, so the archive itself is never
+  /// written to disk. The extracted tree is committed only if the streamed SHA-256 matches
+  /// `expectedSha256`; otherwise it is discarded.
+  ///
+  /// @param version        the normalized Bun version
+  /// @param system         the target system/platform
+  /// @param archive        the archive stream (not closed by this method)
+  /// @param expectedSha256 the expected lowercase hex SHA-256; streaming without one is refused
+  /// @param manifest       which entries to extract
+  /// @return the completed entry directory
+  /// @throws IOException           if the stream cannot be read or the entry cannot be committed
+  /// @throws IllegalStateException if the streamed digest does not match `expectedSha256`
+  public File storeStream(final String version, final BunSystem system, final InputStream archive, final String expectedSha256, final BunExtractionManifest manifest) throws IOException {
+    if (expectedSha256 == null) {
+      throw new IllegalArgumentException("Streaming " + system.zipName() + " requires its expected SHA-256");
+    }
+
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+    }
+
+    final File staging = newStaging(version, system);
+    try {
+      final BunZipMetadata.TailRecorder recorder = new BunZipMetadata.TailRecorder(new DigestInputStream(archive, digest));
+      final BunZipExtractor.Report report = BunHelpers.unzip(recorder, staging, manifest);
+
+      // The central directory follows the last entry; it is part of the digest and holds the file modes
+      recorder.capture();
+      recorder.transferTo(OutputStream.nullOutputStream());
+      recorder.metadata().apply(staging.toPath());
+
+      final String sha256 = BunHelpers.toHex(digest.digest());
+      if (!expectedSha256.equalsIgnoreCase(sha256)) {
+        throw new IllegalStateException("SHA-256 mismatch for " + system.zipName() + "\nExpected: " + expectedSha256 + "\nActual:   " + sha256 + "\nDiscarded streamed install.");
+      }
+
+      report(system.zipName(), report);
+      return commit(staging, entryDir(version, system, sha256, manifest), system, sha256);
+    } finally {
+      deleteRecursively(staging);
+    }
+  }
+
+  private File newStaging(final String version, final BunSystem system) throws IOException {
+    final File staging = new File(systemDir(version, system), ".staging-" + UUID.randomUUID());
+    Files.createDirectories(staging.toPath());
+    return staging;
+  }
+
+  private static void report(final String archive, final BunZipExtractor.Report report) {
+    if (report.skippedCount() > 0) {
+      LOGGER.lifecycle("Extracted {} from {}", report.describe(), archive);
+    } else {
+      LOGGER.info("Extracted {} from {}", report.describe(), archive);
+    }
+  }
+
+  /// Marks a staged tree as complete and moves it into place as `entry`.
+  ///
+  /// If another build committed the same digest first, theirs is kept and the caller discards the staged tree.
+  private static File commit(final File staging, final File entry, final BunSystem system, final String sha256) throws IOException {
+    // File modes come from the archive; only one zipped without them (e.g. on Windows) needs this
+    final Optional<File> executable = BunHelpers.findBunExecutable(staging, system.exeName());
+    if (executable.isPresent() && "bun".equals(system.exeName()) && !executable.get().canExecute()) {
+      //noinspection ResultOfMethodCallIgnored
+      executable.get().setExecutable(true);
+    }
+    Files.writeString(new File(staging, COMPLETE_MARKER).toPath(), sha256, StandardCharsets.UTF_8);
+
+    try {
+      Files.move(staging.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // Another build committed the same digest first; keep theirs. Linux reports a rename onto a
+      // non-empty directory as a plain FileSystemException (ENOTEMPTY), so the entry itself decides
+      if (!isComplete(entry)) {
+        throw e;
+      }
+      LOGGER.info("{} was committed by another build, discarding this copy", entry);
+    }
+
+    return entry;
+  }
+
+  /// Returns the SHA-256 of the archive an entry was extracted from.
+  ///
+  /// The digest is recorded when the entry is committed, so it never has to be recomputed.
+  ///
+  /// @param entry a completed entry directory
+  /// @return the lowercase hex SHA-256 of the archive
+  /// @throws IOException if the entry marker cannot be read
+  public static String digestOf(final File entry) throws IOException {
+    return Files.readString(new File(entry, COMPLETE_MARKER).toPath(), StandardCharsets.UTF_8).trim();
+  }
+
+  /// Returns whether an entry has been verified against a published checksum.
+  ///
+  /// @param entry a completed entry directory
+  /// @return `true` if a verified marker is present
+  public static boolean isVerified(final File entry) {
+    return new File(entry, VERIFIED_MARKER).isFile();
+  }
+
+  /// Records that an entry matched its published checksum, so later builds never check it again.
+  ///
+  /// @param entry  a completed entry directory
+  /// @param sha256 the published digest the entry matched
+  /// @throws IOException if the marker cannot be written
+  public static void markVerified(final File entry, final String sha256) throws IOException {
+    Files.writeString(new File(entry, VERIFIED_MARKER).toPath(), sha256, StandardCharsets.UTF_8);
+  }
+
+  /// Records that an entry was used, so [BunCleanup] keeps it for another retention period.
+  ///
+  /// @param entry a completed entry directory
+  public static void markUsed(final File entry) {
+    if (isComplete(entry)) {
+      BunCleanup.markUsed(new File(entry, USED_MARKER));
+    }
+  }
+
+  /// Returns whether an installation still depends on an entry through symlinks.
+  ///
+  /// Registrations of installations that are gone, or that were reinstalled from another
+  /// entry, are deleted on the way.
+  ///
+  /// @param entry a completed entry directory
+  /// @return `true` if removing the entry would break an installation
+  public static boolean isLinked(final File entry) {
+    final File[] links = new File(entry, LINKS_DIR).listFiles(File::isFile);
+    boolean linked = false;
+    for (File link : links == null ? new File[0] : links) {
+      try {
+        final File platformDir = new File(Files.readString(link.toPath(), StandardCharsets.UTF_8).trim());
+        final Optional<BunInstallation> installation = BunInstallation.read(platformDir);
+        final boolean current;
+        if (installation.isPresent()) {
+          current = installation.get().entryDir().map(File::getAbsoluteFile).filter(entry.getAbsoluteFile()::equals).isPresent();
+        } else {
+          // The installation may still be writing its install.json
+          current = platformDir.isDirectory() && System.currentTimeMillis() - link.lastModified() < LINK_GRACE_MILLIS;
+        }
+
+        if (current) {
+          linked = true;
+        } else {
+          Files.deleteIfExists(link.toPath());
+        }
+      } catch (IOException e) {
+        // A registration that cannot be read is kept, erring on the side of keeping the entry
+        linked = true;
+      }
+    }
+    return linked;
+  }
+
+  /// Returns the file inside the cache that the archive for a version/system is downloaded to.
+  ///
+  /// Downloading into the cache keeps the archive on the same file system as the entries,
+  /// so extraction and cleanup never cross devices. The path is stable between runs, which
+  /// lets [BunDownloader] resume an interrupted download from its `.part` file.
+  ///
+  /// @param version the normalized Bun version
+  /// @param system  the target system/platform
+  /// @return the download destination (which may not exist yet)
+  /// @throws IOException if the directory cannot be created
+  public File downloadFile(final String version, final BunSystem system) throws IOException {
+    final File dir = systemDir(version, system);
+    Files.createDirectories(dir.toPath());
+    return new File(dir, system.zipName());
+  }
+
+  /// Mirrors a cache entry into an installation directory.
+  ///
+  /// Directories are created for real, so tools may add files next to the executable
+  /// without touching the cache. Files are hardlinked, falling back to a symlink and
+  /// finally to a plain copy when the file system does not support links.
+  ///
+  /// The mirror is built in a temporary sibling of `installDir` and each top-level directory
+  /// of the entry is then renamed into place atomically, so other builds never see a partial
+  /// tree. A leftover top-level directory of the same name (from an interrupted install by an
+  /// older plugin version) is replaced; callers must hold the install lock.
+  ///
+  /// @param entry      the completed cache entry
+  /// @param installDir the per-project installation directory
+  /// @throws IOException if the mirror cannot be created
+  public static void link(final File entry, final File installDir) throws IOException {
+    final File staging = new File(installDir.getAbsoluteFile().getParentFile(), ".staging-" + UUID.randomUUID());
+    try {
+      if (mirror(entry.toPath(), staging.toPath())) {
+        // The platform directory of an entry has the same name as the one of its installations
+        final File platformDir = new File(installDir, entry.getParentFile().getName()).getAbsoluteFile();
+        final File registration = new File(entry, LINKS_DIR + File.separator + UUID.nameUUIDFromBytes(platformDir.getPath().getBytes(StandardCharsets.UTF_8)));
+        Files.createDirectories(registration.getParentFile().toPath());
+        Files.writeString(registration.toPath(), platformDir.getPath(), StandardCharsets.UTF_8);
+      }
+      Files.createDirectories(installDir.toPath());
+
+      final File[] children = staging.listFiles();
+      for (File child : children == null ? new File[0] : children) {
+        final Path target = new File(installDir, child.getName()).toPath();
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+          deleteRecursively(target.toFile());
+        }
+        Files.move(child.toPath(), target, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } finally {
+      deleteRecursively(staging);
+    }
+  }
+
+  /// Mirrors `source` into `target` and returns whether any file had to be symlinked.
+  private static boolean mirror(final Path source, final Path target) throws IOException {
+    final boolean[] symlinked = {false};
+
+    Files.walkFileTree(source, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        if (dir.getFileName().toString().equals(LINKS_DIR) && dir.getParent().equals(source)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        final String name = file.getFileName().toString();
+        if (name.equals(COMPLETE_MARKER) || name.equals(VERIFIED_MARKER) || name.equals(USED_MARKER)) {
+          return FileVisitResult.CONTINUE;
+        }
+
+        final Path link = target.resolve(source.relativize(file).toString());
+        Files.deleteIfExists(link);
+        symlinked[0] |= linkFile(file, link);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return symlinked[0];
+  }
+
+  /// Links or copies a file, returning `true` if the result is a symlink.
+  private static boolean linkFile(final Path existing, final Path link) throws IOException {
+    try {
+      Files.createLink(link, existing);
+      return false;
+    } catch (UnsupportedOperationException | IOException e) {
+      // Different file system or no hardlink support, try a symlink next
+    }
+
+    try {
+      Files.createSymbolicLink(link, existing.toAbsolutePath());
+      return true;
+    } catch (UnsupportedOperationException | IOException e) {
+      // Symlinks may require elevated privileges (e.g. on Windows), copy instead
+    }
+
+    Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    return false;
+  }
+
+  private static boolean isComplete(final File entry) {
+    return new File(entry, COMPLETE_MARKER).isFile();
+  }
+
+  static void deleteRecursively(final File dir) throws IOException {
+    if (!dir.exists()) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(dir.toPath())) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package io.github.tetratheta.bun;
+
+import java.io.File;
+import java.io.Serializable;
+import java.net.URI;
+
+/// A place Bun release assets can be fetched from.
+///
+/// A source maps a release asset (the platform zip or `SHASUMS256.txt`) of a version to a URI.
+/// `https:` URIs are fetched through [BunHttpTransport]; `file:` URIs are read directly, so a
+/// mounted share works the same way as an HTTP mirror. Every source must serve the same files
+/// as the official release, since downloads are verified against the published checksums.
+///
+/// Three implementations are provided:
+///   - [#github()] — the official GitHub releases (the default).
+///   - [#mirror(String)] — an HTTP mirror described by a URL template.
+///   - [#directory(File)] — a local or network directory laid out like the GitHub release paths.
+///
+/// Sources are configured as an ordered list on [BunExtension#getSources()]:
+/// ```
+/// bun {
+///   sources = [
+///     BunDistributionSource.mirror("https://artifacts.example.com/bun/bun-v{version}/{asset}"),
+///     BunDistributionSource.directory(file("/mnt/tools/bun")),
+///     BunDistributionSource.github()
+///   ]
+/// }
+/// ```
+public interface BunDistributionSource extends Serializable {
+  /// Returns the location of a release asset.
+  ///
+  /// @param version   the normalized Bun version
+  /// @param assetName the asset file name (e.g. `bun-linux-x64.zip` or `SHASUMS256.txt`)
+  /// @return the URI of the asset in this source
+  URI resolve(String version, String assetName);
+
+  /// Whether this source reads from the file system rather than the network.
+  ///
+  /// Only local sources are used while Gradle runs offline.
+  ///
+  /// @return `true` if no network access is needed
+  default boolean isLocal() {
+    return false;
+  }
+
+  /// The official GitHub releases of `oven-sh/bun`.
+  ///
+  /// @return the GitHub source
+  static BunDistributionSource github() {
+    return new GitHub();
+  }
+
+  /// An HTTP mirror whose asset URLs follow a template.
+  ///
+  /// The template may contain `{version}` (e.g. `1.1.0`) and must contain `{asset}`
+  /// (e.g. `bun-linux-x64.zip`).
+  ///
+  /// @param urlTemplate the URL template, e.g. `https://mirror.example.com/bun/bun-v{version}/{asset}`
+  /// @return the mirror source
+  /// @throws IllegalArgumentException if the template has no `{asset}` placeholder
+  static BunDistributionSource mirror(final String urlTemplate) {
+    return new Mirror(urlTemplate);
+  }
+
+  /// A directory laid out like the GitHub release paths:
+  /// ```
+  /// <root>/bun-v<version>/<asset>
+  /// ```
+  ///
+  /// @param root the directory holding one `bun-v<version>` subdirectory per release
+  /// @return the directory source
+  static BunDistributionSource directory(final File root) {
+    return new Directory(root);
+  }
+
+  /// Source for the official GitHub releases.
+  record GitHub() implements BunDistributionSource {
+    @Override
+    public URI resolve(final String version, final String assetName) {
+      return BunHelpers.bunAssetUrl(version, assetName);
+    }
+
+    @Override
+    public String toString() {
+      return "github";
+    }
+  }
+
+  /// Source for an HTTP mirror described by a URL template.
+  ///
+  /// @param urlTemplate the URL template with `{version}` and `{asset}` placeholders
+  record Mirror(String urlTemplate) implements BunDistributionSource {
+    /// Validates the template.
+    public Mirror {
+      if (!urlTemplate.contains("{asset}")) {
+        throw new IllegalArgumentException("Mirror URL template must contain {asset}: " + urlTemplate);
+      }
+    }
+
+    @Override
+    public URI resolve(final String version, final String assetName) {
+      return URI.create(urlTemplate.replace("{version}", version).replace("{asset}", assetName));
+    }
+
+    @Override
+    public boolean isLocal() {
+      return urlTemplate.regionMatches(true, 0, "file:", 0, 5);
+    }
+
+    @Override
+    public String toString() {
+      return "mirror " + urlTemplate;
+    }
+  }
+
+  /// Source for a directory laid out like the GitHub release paths.
+  ///
+  /// @param root the directory holding one `bun-v<version>` subdirectory per release
+  record Directory(File root) implements BunDistributionSource {
+    @Override
+    public URI resolve(final String version, final String assetName) {
+      return new File(root, "bun-v" + version + File.separator + assetName).getAbsoluteFile().toURI();
+    }
+
+    @Override
+    public boolean isLocal() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "directory " + root;
+    }
+  }
+}
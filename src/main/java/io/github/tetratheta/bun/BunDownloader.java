@@ -0,0 +1,468 @@
+package io.github.tetratheta.bun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// Downloads Bun archives over HTTP, fetching large files as parallel byte ranges.
+///
+/// The downloader first sends a one-byte `Range` probe. This probe:
+///   - Follows redirects (GitHub release assets redirect to a CDN) so range requests hit the final URL.
+///   - Learns the total size from the `Content-Range` header, and the `ETag` of the file.
+///   - Reveals whether the server honors ranges at all.
+///
+/// When ranges are supported, the body is written to `<destination>.part`, preallocated to its
+/// full size, and split into segments. Each connection writes its segment directly into a shared
+/// [FileChannel] at the right offset. Progress is recorded in a small `<destination>.part.properties`
+/// sidecar, so an interrupted download resumes with `Range` requests on the next run as long as
+/// the server still reports the same `ETag` (or `Last-Modified`) and length.
+///
+/// The SHA-256 of the file is computed while it is written, so verifying it needs no extra pass:
+/// bytes at the hashing frontier are digested straight from the download buffer, and bytes that
+/// other segments wrote ahead of the frontier are digested once the frontier reaches them.
+///
+/// Only a complete file is moved to `destination`, atomically where the file system allows it.
+/// Servers that ignore the `Range` header answer the probe with the full body, which is then
+/// streamed as a single, non-resumable download. `file:` URIs are simply copied.
+///
+/// Transient failures are retried according to a [BunRetryPolicy]. A failed range is retried on
+/// its own and continues from the last byte written, guarded by `If-Range` so a file that changed
+/// on the server is never stitched together from two versions.
+public class BunDownloader {
+  /// Default number of parallel connections.
+  public static final int DEFAULT_CONNECTIONS = 4;
+
+  /// Files smaller than this are always downloaded over one connection.
+  static final long MIN_PARALLEL_SIZE = 4L * 1024 * 1024;
+
+  /// How many bytes a segment downloads between progress checkpoints.
+  private static final long CHECKPOINT_INTERVAL = 8L * 1024 * 1024;
+
+  private static final int HTTP_OK = 200;
+  private static final int HTTP_PARTIAL = 206;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+
+  private final BunHttpTransport transport;
+  private final int connections;
+  private final BunRetryPolicy.Budget budget;
+
+  /// Creates a downloader.
+  ///
+  /// @param transport   the transport used for all requests
+  /// @param connections the maximum number of parallel range requests (values below 1 are treated as 1)
+  /// @param budget      the retry policy and deadline shared by all requests of the download
+  public BunDownloader(final BunHttpTransport transport, final int connections, final BunRetryPolicy.Budget budget) {
+    this.transport = transport;
+    this.connections = Math.max(1, connections);
+    this.budget = budget;
+  }
+
+  /// Downloads `url` into `destination`, replacing any existing file.
+  ///
+  /// A previous partial download of the same file is resumed when possible.
+  ///
+  /// @param url         the URL to download
+  /// @param destination the destination file
+  /// @return statistics about the finished download
+  /// @throws IOException if the download fails or the destination cannot be written
+  public Result download(final URI url, final File destination) throws IOException {
+    Files.createDirectories(destination.getAbsoluteFile().getParentFile().toPath());
+    final long start = System.nanoTime();
+
+    final File part = new File(destination.getPath() + ".part");
+    final File sidecar = new File(destination.getPath() + ".part.properties");
+
+    if (BunHttpTransport.isFile(url)) {
+      // Local sources are copied, still through the part file so the destination appears atomically
+      Files.deleteIfExists(sidecar.toPath());
+      final MessageDigest digest = newDigest();
+      final long bytes;
+      try (InputStream in = new DigestInputStream(transport.open(url), digest)) {
+        bytes = Files.copy(in, part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      commit(part, destination);
+      return new Result(bytes, 0, System.nanoTime() - start, 1, BunHelpers.toHex(digest.digest()));
+    }
+
+    final Probe probe = budget.call("Downloading " + url, attempt -> probe(url, part, sidecar, attempt));
+
+    if (probe.sha256 != null) {
+      // Range ignored: the probe already carried the full body
+      commit(part, destination);
+      return new Result(probe.total, 0, System.nanoTime() - start, 1, probe.sha256);
+    }
+
+    final int parts = probe.total < MIN_PARALLEL_SIZE ? 1 : (int) Math.min(connections, probe.total / (MIN_PARALLEL_SIZE / 4));
+    final PartState state = PartState.resume(sidecar, part, probe.total, probe.validator).orElseGet(() -> PartState.plan(probe.total, probe.validator, parts));
+    final long resumed = state.done();
+
+    final String sha256 = fetch(probe.resolved, part, sidecar, state);
+    commit(part, destination);
+    Files.deleteIfExists(sidecar.toPath());
+
+    return new Result(probe.total - resumed, resumed, System.nanoTime() - start, state.pending.size(), sha256);
+  }
+
+  /// Sends the one-byte range probe.
+  ///
+  /// If the server ignores the range, the full body is saved to `part` right away and the
+  /// returned probe carries its digest; otherwise it describes the file for range requests.
+  private Probe probe(final URI url, final File part, final File sidecar, final BunRetryPolicy.Attempt attempt) throws IOException {
+    final HttpResponse<InputStream> response = transport.getArchive(url, "Range", "bytes=0-0");
+
+    try (InputStream body = response.body()) {
+      if (response.statusCode() == HTTP_OK) {
+        // Nothing can be resumed without range support
+        Files.deleteIfExists(sidecar.toPath());
+        final MessageDigest digest = newDigest();
+        long bytes = 0;
+        try (OutputStream out = Files.newOutputStream(part.toPath())) {
+          final byte[] buffer = new byte[BUFFER_SIZE];
+          int read;
+          while ((read = body.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            digest.update(buffer, 0, read);
+            bytes += read;
+            attempt.transferred(read);
+            budget.checkDeadline("Downloading " + url);
+          }
+        }
+        return new Probe(bytes, response.uri(), "", BunHelpers.toHex(digest.digest()));
+      }
+
+      BunHttpTransport.expectStatus(response, HTTP_PARTIAL, "downloading");
+      body.readAllBytes();
+
+      final long total = totalLength(response);
+      if (total < 0) {
+        throw new IOException("Server did not report the size of " + url);
+      }
+
+      final String validator = response.headers().firstValue("ETag").orElse(response.headers().firstValue("Last-Modified").orElse(""));
+      return new Probe(total, response.uri(), validator, null);
+    }
+  }
+
+  /// Outcome of the range probe.
+  ///
+  /// @param total     the file size
+  /// @param resolved  the URI that answered after redirects
+  /// @param validator the `ETag` or `Last-Modified` value, or empty
+  /// @param sha256    the digest if the full body was already saved, otherwise `null`
+  private record Probe(long total, URI resolved, String validator, String sha256) {
+  }
+
+  private String fetch(final URI url, final File part, final File sidecar, final PartState state) throws IOException {
+    if (state.done() == 0) {
+      Files.deleteIfExists(part.toPath());
+    }
+
+    final AtomicInteger threadIndex = new AtomicInteger();
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, state.pending.size()), r -> {
+      final Thread thread = new Thread(r, "bun-download-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try (RandomAccessFile file = new RandomAccessFile(part, "rw"); FileChannel channel = file.getChannel()) {
+      if (file.length() != state.total) {
+        file.setLength(state.total);
+      }
+      state.save(sidecar);
+
+      // Digest whatever an earlier run already wrote
+      final FrontierDigest digest = new FrontierDigest(state.segments);
+      digest.catchUp(channel);
+
+      final List<Future<Void>> futures = new ArrayList<>(state.pending.size());
+      for (Segment segment : state.pending) {
+        futures.add(pool.submit(() -> budget.call("Range " + segment.from + "-" + segment.to + " of " + url, attempt -> {
+          fetchSegment(url, channel, segment, state, sidecar, digest, attempt);
+          return null;
+        })));
+      }
+
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          futures.forEach(f -> f.cancel(true));
+          if (e.getCause() instanceof IOException io) throw io;
+          throw new IOException("Failed to download " + url, e.getCause());
+        } catch (InterruptedException e) {
+          futures.forEach(f -> f.cancel(true));
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while downloading " + url, e);
+        }
+      }
+
+      return digest.finish(channel, state.total);
+    } finally {
+      pool.shutdownNow();
+      // Record how far each segment got, so the next run resumes from there
+      if (!state.complete()) {
+        state.save(sidecar);
+      }
+    }
+  }
+
+  private void fetchSegment(final URI url, final FileChannel channel, final Segment segment, final PartState state, final File sidecar, final FrontierDigest digest, final BunRetryPolicy.Attempt attempt) throws IOException {
+    final long from = segment.from + segment.done.get();
+    final String range = "bytes=" + from + "-" + segment.to;
+    // If-Range makes a server whose file changed answer 200 instead of mixing two versions;
+    // weak ETags are not allowed there, so those requests go without it
+    final boolean strong = !state.validator.isEmpty() && !state.validator.startsWith("W/");
+    final HttpResponse<InputStream> response = strong ? transport.getArchive(url, "Range", range, "If-Range", state.validator) : transport.getArchive(url, "Range", range);
+
+    try (InputStream in = response.body()) {
+      BunHttpTransport.expectStatus(response, HTTP_PARTIAL, "downloading");
+
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      long position = from;
+      long checkpoint = position + CHECKPOINT_INTERVAL;
+
+      int read;
+      while (position <= segment.to && (read = in.read(buffer)) >= 0 && !Thread.currentThread().isInterrupted()) {
+        final int length = (int) Math.min(read, segment.to + 1 - position);
+        final ByteBuffer slice = ByteBuffer.wrap(buffer, 0, length);
+        final long written = position;
+        while (slice.hasRemaining()) {
+          position += channel.write(slice, position);
+        }
+        segment.done.set(position - segment.from);
+        digest.written(channel, written, buffer, length);
+        attempt.transferred(length);
+        budget.checkDeadline("Downloading " + url);
+
+        if (position >= checkpoint) {
+          state.save(sidecar);
+          checkpoint = position + CHECKPOINT_INTERVAL;
+        }
+      }
+
+      if (position != segment.to + 1) {
+        throw new IOException("Incomplete range " + segment.from + "-" + segment.to + " from " + url + ": got " + (position - segment.from) + " bytes");
+      }
+    }
+  }
+
+  private static void commit(final File source, final File destination) throws IOException {
+    try {
+      Files.move(source.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+    }
+  }
+
+  private static long totalLength(final HttpResponse<?> response) {
+    final Optional<String> contentRange = response.headers().firstValue("Content-Range");
+    if (contentRange.isEmpty()) {
+      return -1;
+    }
+
+    final Matcher matcher = CONTENT_RANGE.matcher(contentRange.get());
+    return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+  }
+
+  /// A byte range `[from, to]` of the file and how many of its bytes are already on disk.
+  private record Segment(long from, long to, AtomicLong done) {
+    boolean complete() {
+      return from + done.get() > to;
+    }
+  }
+
+  /// SHA-256 over the contiguous prefix of the file that has been written so far.
+  ///
+  /// Segments download concurrently and out of order, but a digest has to see bytes in order.
+  /// The segment currently at the frontier feeds its buffer straight into the digest; whenever
+  /// the frontier moves into bytes another segment has already written, those are read back from
+  /// the channel (they are still in the page cache) until the frontier catches up.
+  private static final class FrontierDigest {
+    private final MessageDigest digest = newDigest();
+    private final List<Segment> segments;
+    private final ByteBuffer scratch = ByteBuffer.allocate(BUFFER_SIZE);
+    private long hashed;
+
+    FrontierDigest(final List<Segment> segments) {
+      this.segments = segments;
+    }
+
+    synchronized void written(final FileChannel channel, final long position, final byte[] buffer, final int length) throws IOException {
+      if (position == hashed) {
+        digest.update(buffer, 0, length);
+        hashed += length;
+      }
+      catchUp(channel);
+    }
+
+    synchronized void catchUp(final FileChannel channel) throws IOException {
+      final long end = contiguousEnd();
+
+      while (hashed < end) {
+        scratch.clear().limit((int) Math.min(scratch.capacity(), end - hashed));
+        final int read = channel.read(scratch, hashed);
+        if (read < 0) {
+          throw new IOException("Unexpected end of partial download at byte " + hashed);
+        }
+        digest.update(scratch.array(), 0, read);
+        hashed += read;
+      }
+    }
+
+    synchronized String finish(final FileChannel channel, final long total) throws IOException {
+      catchUp(channel);
+      if (hashed != total) {
+        throw new IOException("Digest covers " + hashed + " of " + total + " bytes");
+      }
+      return BunHelpers.toHex(digest.digest());
+    }
+
+    private long contiguousEnd() {
+      long end = 0;
+      for (Segment segment : segments) {
+        end = segment.from + segment.done.get();
+        if (!segment.complete()) {
+          break;
+        }
+      }
+      return end;
+    }
+  }
+
+  /// Progress of a `.part` file, persisted in its sidecar.
+  private static final class PartState {
+    private final long total;
+    private final String validator;
+    private final List<Segment> segments;
+    private final List<Segment> pending;
+
+    private PartState(final long total, final String validator, final List<Segment> segments) {
+      this.total = total;
+      this.validator = validator;
+      this.segments = segments;
+      this.pending = segments.stream().filter(s -> !s.complete()).toList();
+    }
+
+    static PartState plan(final long total, final String validator, final int parts) {
+      final long chunk = (total + parts - 1) / parts;
+      final List<Segment> segments = new ArrayList<>(parts);
+
+      for (long first = 0; first < total; first += chunk) {
+        segments.add(new Segment(first, Math.min(total, first + chunk) - 1, new AtomicLong()));
+      }
+
+      return new PartState(total, validator, segments);
+    }
+
+    /// Loads the sidecar if it describes the same remote file (same length and non-empty validator).
+    static Optional<PartState> resume(final File sidecar, final File part, final long total, final String validator) {
+      if (validator.isEmpty() || !sidecar.isFile() || !part.isFile() || part.length() != total) {
+        return Optional.empty();
+      }
+
+      final Properties properties = new Properties();
+      try (InputStream in = Files.newInputStream(sidecar.toPath())) {
+        properties.load(in);
+
+        if (!validator.equals(properties.getProperty("validator")) || total != Long.parseLong(properties.getProperty("length", "-1"))) {
+          return Optional.empty();
+        }
+
+        final int count = Integer.parseInt(properties.getProperty("segments", "0"));
+        final List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          final String[] value = properties.getProperty("segment." + i, "").split("[-:]");
+          segments.add(new Segment(Long.parseLong(value[0]), Long.parseLong(value[1]), new AtomicLong(Long.parseLong(value[2]))));
+        }
+
+        return count == 0 ? Optional.empty() : Optional.of(new PartState(total, validator, segments));
+      } catch (IOException | RuntimeException e) {
+        // Unreadable or inconsistent sidecar, start over
+        return Optional.empty();
+      }
+    }
+
+    boolean complete() {
+      return segments.stream().allMatch(Segment::complete);
+    }
+
+    long done() {
+      return segments.stream().mapToLong(s -> s.done.get()).sum();
+    }
+
+    synchronized void save(final File sidecar) throws IOException {
+      final Properties properties = new Properties();
+      properties.setProperty("validator", validator);
+      properties.setProperty("length", Long.toString(total));
+      properties.setProperty("segments", Integer.toString(segments.size()));
+      for (int i = 0; i < segments.size(); i++) {
+        final Segment segment = segments.get(i);
+        properties.setProperty("segment." + i, segment.from + "-" + segment.to + ":" + segment.done.get());
+      }
+
+      final File tmp = new File(sidecar.getPath() + ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+        properties.store(out, "Bun partial download progress");
+      }
+      commit(tmp, sidecar);
+    }
+  }
+
+  /// Statistics of a finished download.
+  ///
+  /// @param bytes        the number of bytes transferred by this run
+  /// @param resumedBytes the number of bytes reused from an earlier, interrupted run
+  /// @param nanos        the elapsed wall-clock time in nanoseconds
+  /// @param connections  the number of connections used for the body
+  /// @param sha256       the lowercase hex SHA-256 of the complete file
+  public record Result(long bytes, long resumedBytes, long nanos, int connections, String sha256) {
+    /// Returns the average throughput of this run in MiB per second.
+    ///
+    /// @return throughput in MiB/s
+    public double mibPerSecond() {
+      return nanos == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+    }
+
+    /// Returns a human-readable summary such as `"92.1 MiB in 3.40 s (27.1 MiB/s, 4 connections)"`.
+    ///
+    /// @return the summary
+    public String describe() {
+      final String summary = String.format(Locale.ROOT, "%.1f MiB in %.2f s (%.1f MiB/s, %d connection%s)", bytes / (1024.0 * 1024.0), nanos / 1_000_000_000.0, mibPerSecond(), connections, connections == 1 ? "" : "s");
+      return resumedBytes == 0 ? summary : summary + String.format(Locale.ROOT, ", resumed after %.1f MiB", resumedBytes / (1024.0 * 1024.0));
+    }
+  }
+}
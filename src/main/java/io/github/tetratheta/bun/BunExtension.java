@@ -2,9 +2,11 @@ package io.github.tetratheta.bun;
 
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 
 import javax.inject.Inject;
+import java.time.Duration;
 
 /// Gradle extension used to configure the Bun runtime for a project.
 ///
@@ -35,14 +37,59 @@ public abstract class BunExtension {
     // Intentionally empty
   }
 
+  /// Whether a distribution may be installed without verifying its SHA-256.
+  ///
+  /// By default every archive is verified against [#getSha256()] or the release's `SHASUMS256.txt`,
+  /// taken from the shared cache or one of the [#getSources()], and the build fails when neither
+  /// can be obtained. Enabling this installs such an archive with a warning instead; it is not
+  /// marked as verified, so it is checked again whenever a checksum becomes available.
+  /// Streaming installs (see [#getStreamingInstall()]) still need a checksum.
+  /// Defaults to false.
+  ///
+  /// @return a Gradle [Property] representing whether unverified installs are allowed
+  public abstract Property<Boolean> getAllowUnverified();
+
+  /// Time allowed to establish a connection when downloading Bun.
+  ///
+  /// Defaults to 10 seconds.
+  ///
+  /// @return a Gradle [Property] representing the connect timeout
+  public abstract Property<Duration> getConnectTimeout();
+
+  /// Total time allowed to download and verify one Bun distribution, including all retries.
+  ///
+  /// Defaults to 15 minutes.
+  ///
+  /// @return a Gradle [Property] representing the download deadline
+  public abstract Property<Duration> getDownloadDeadline();
+
   /// Whether to disable SSL certificate verification during downloads.
   ///
+  /// Only the plugin's own HTTP client is affected; no JVM-wide setting is changed.
   /// This is useful in corporate environments with SSL-intercepting proxies.
   /// Defaults to false.
   ///
   /// @return a Gradle [Property] representing whether SSL verification is disabled
   public abstract Property<Boolean> getDisableSslVerification();
 
+  /// Maximum number of parallel connections used to download the Bun archive.
+  ///
+  /// Large archives are split into byte ranges fetched concurrently. Servers that do not
+  /// support range requests are downloaded over a single connection regardless.
+  /// Defaults to 4.
+  ///
+  /// @return a Gradle [Property] representing the number of download connections
+  public abstract Property<Integer> getDownloadConnections();
+
+  /// Glob patterns of the archive entries to extract, e.g. `["*/bun", "*/lib/**"]`.
+  ///
+  /// Entries that match no pattern are skipped without being written, and what was skipped is
+  /// reported. `*` matches within a path segment and `**` across segments; `["**"]` extracts
+  /// everything. Defaults to the executable of the selected system, which is all Bun needs.
+  ///
+  /// @return a Gradle [ListProperty] of entry patterns
+  public abstract ListProperty<String> getExtract();
+
   /// Whether to force usage of Bun when Node is required to run script.
   ///
   /// This is the only way of forcing Bun usage because `bunfig.toml` and `--bun` are both ignored.
@@ -51,6 +98,108 @@ public abstract class BunExtension {
   /// @return a Gradle [Property] representing the configured 'Ghost Node' option
   public abstract Property<Boolean> getForceBun();
 
+  /// Time a download may receive no data before the connection is abandoned and retried.
+  ///
+  /// Defaults to 30 seconds.
+  ///
+  /// @return a Gradle [Property] representing the idle timeout
+  public abstract Property<Duration> getIdleTimeout();
+
+  /// How long `"latest"` stays pinned to the version it resolved to.
+  ///
+  /// The resolved version is recorded in `.gradle/bun/latest.lock` of the root project and
+  /// only checked against GitHub again once this much time has passed. The release index
+  /// used to resolve version ranges is refreshed on the same schedule. Defaults to 24 hours.
+  ///
+  /// @return a Gradle [Property] representing the time-to-live of the resolved latest version
+  public abstract Property<Duration> getLatestTtl();
+
+  /// Whether to resolve Bun without any network access.
+  ///
+  /// Offline, Bun is taken only from an existing installation, the shared cache or local
+  /// [BunDistributionSource]s, `"latest"` stays on its pinned version, and checksums are only
+  /// verified when the manifest is available locally. A missing distribution fails immediately.
+  /// Defaults to Gradle's `--offline` flag.
+  ///
+  /// @return a Gradle [Property] representing whether offline mode is enabled
+  public abstract Property<Boolean> getOffline();
+
+  /// Time allowed to wait for the response to a download request.
+  ///
+  /// Defaults to 30 seconds.
+  ///
+  /// @return a Gradle [Property] representing the read timeout
+  public abstract Property<Duration> getReadTimeout();
+
+  /// How long an installed or cached Bun version may go unused before it is removed.
+  ///
+  /// At the end of a build that ran `bunSetup`, unused installations under `.gradle/bun` and
+  /// distributions in the shared cache are cleaned up, at most once a day. Defaults to 30 days.
+  ///
+  /// @return a Gradle [Property] representing the retention period
+  public abstract Property<Duration> getRetentionPeriod();
+
+  /// How many of the most recently used Bun versions are kept by cleanup.
+  ///
+  /// Defaults to unlimited.
+  ///
+  /// @return a Gradle [Property] representing the maximum number of kept versions
+  public abstract Property<Integer> getRetentionVersions();
+
+  /// How many bytes of installations, and separately of cached distributions, are kept by cleanup.
+  ///
+  /// The least recently used are removed first. Defaults to unlimited.
+  ///
+  /// @return a Gradle [Property] representing the size budget in bytes
+  public abstract Property<Long> getRetentionBytes();
+
+  /// How many times a failing network request is attempted in total.
+  ///
+  /// Connection errors, timeouts, stalled transfers and HTTP `408`, `429` and `5xx` answers are
+  /// retried; interrupted range downloads continue from the last byte received. Defaults to 4.
+  ///
+  /// @return a Gradle [Property] representing the maximum number of attempts
+  public abstract Property<Integer> getRetryAttempts();
+
+  /// Wait before the first retry of a failed network request.
+  ///
+  /// Later retries wait exponentially longer, with random jitter, up to 30 seconds.
+  /// Defaults to 1 second.
+  ///
+  /// @return a Gradle [Property] representing the initial retry backoff
+  public abstract Property<Duration> getRetryBackoff();
+
+  /// Expected SHA-256 of the distribution archive, as lowercase or uppercase hex.
+  ///
+  /// When set, the download is verified against this digest instead of the release's published
+  /// checksum manifest, and the digest becomes part of the `bunSetup` build cache key.
+  /// Unset by default.
+  ///
+  /// @return a Gradle [Property] representing the expected archive digest
+  public abstract Property<String> getSha256();
+
+  /// Where Bun distributions are downloaded from, in order of preference.
+  ///
+  /// When several sources are configured, the plugin probes all of them and downloads from the
+  /// fastest one that answers, falling back to the others on failure. Every source must serve
+  /// the official release files, which are verified against the published checksums; a source
+  /// without `SHASUMS256.txt` fails the install unless [#getAllowUnverified()] is enabled.
+  /// Defaults to [BunDistributionSource#github()] only.
+  ///
+  /// @return a Gradle [ListProperty] of distribution sources
+  public abstract ListProperty<BunDistributionSource> getSources();
+
+  /// Whether to install Bun by unpacking the archive while it downloads.
+  ///
+  /// In this mode the archive is hashed and extracted as bytes arrive, so it is never written
+  /// to disk and network and disk I/O overlap. Parallel range downloads and resuming are not
+  /// available in this mode, and the expected digest (the published checksum or [#getSha256()])
+  /// must be known up front: the extracted tree is only kept if the streamed digest matches it.
+  /// Defaults to false.
+  ///
+  /// @return a Gradle [Property] representing whether streaming installation is enabled
+  public abstract Property<Boolean> getStreamingInstall();
+
   /// The system/platform variant of Bun to install.
   ///
   /// This typically corresponds to a combination of operating system and CPU
@@ -62,11 +211,24 @@ public abstract class BunExtension {
   /// @return a Gradle [Property] representing the configured Bun system
   public abstract Property<BunSystem> getSystem();
 
+  /// Whether a Bun already installed on this machine may be used instead of downloading one.
+  ///
+  /// `PATH`, `$BUN_INSTALL/bin` and `~/.bun/bin` are searched for a Bun reporting exactly the
+  /// resolved version; if one is found, this project installs nothing and its tasks run it directly (see
+  /// [BunDiscoverySource]). Only applies while [#getSystem()] is auto-detected.
+  ///
+  /// Defaults to `false`, so Bun is always an isolated installation under `.gradle/bun` unless this is enabled.
+  ///
+  /// @return a Gradle [Property] representing whether a system Bun may be used
+  public abstract Property<Boolean> getUseSystemBun();
+
   /// The Bun version to install.
   ///
   /// This value may be:
   ///   - An explicit version string (e.g. `"1.1.0"`)
-  ///   - `"latest"` to resolve the most recent release
+  ///   - `"latest"` to resolve the most recent release (pinned for [#getLatestTtl()])
+  ///   - A range such as `"1.1.x"`, `"^1.1.0"` or `">=1.1 <1.2"` (see [BunVersionRange]), resolved to the
+  ///     highest matching release from an index cached in the Gradle user home (rechecked after [#getLatestTtl()])
   ///   - Unset, in which case the plugin will apply a default
   ///
   /// @return a Gradle [Property] representing the configured Bun version
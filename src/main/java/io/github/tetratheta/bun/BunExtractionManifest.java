@@ -0,0 +1,94 @@
+package io.github.tetratheta.bun;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/// Which entries of a Bun archive are extracted.
+///
+/// Patterns are globs matched against the full entry name inside the archive, using `/` as
+/// separator: `*` matches within one path segment, `**` across segments and `?` one character.
+/// An entry is extracted if any pattern matches it; directories are created as needed.
+///
+/// The default for a [BunSystem] ([#forSystem(BunSystem)]) is its executable, which is all the
+/// Bun runtime loads. [#ALL] extracts everything.
+///
+/// @param patterns the glob patterns of entries to extract
+public record BunExtractionManifest(List<String> patterns) implements Serializable {
+  /// Extracts every entry.
+  public static final BunExtractionManifest ALL = new BunExtractionManifest(List.of("**"));
+
+  /// Validates and copies the patterns.
+  public BunExtractionManifest {
+    if (patterns.isEmpty()) {
+      throw new IllegalArgumentException("An extraction manifest needs at least one pattern");
+    }
+    patterns = List.copyOf(patterns);
+  }
+
+  /// Returns the manifest that extracts only the executable of `system`.
+  ///
+  /// @param system the target system/platform
+  /// @return a manifest matching the executable at the archive root or in its top-level directory
+  public static BunExtractionManifest forSystem(final BunSystem system) {
+    return new BunExtractionManifest(List.of(system.exeName(), "*/" + system.exeName()));
+  }
+
+  /// Returns whether every entry is extracted.
+  ///
+  /// @return `true` if some pattern is `**`
+  public boolean isAll() {
+    return patterns.contains("**");
+  }
+
+  /// Returns whether an entry is extracted.
+  ///
+  /// @param entryName the entry name inside the archive
+  /// @return `true` if any pattern matches
+  public boolean includes(final String entryName) {
+    for (String pattern : patterns) {
+      if (toRegex(pattern).matcher(entryName).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /// Returns a short, stable identifier of the patterns, used to key partial cache entries.
+  ///
+  /// @return eight lowercase hex digits
+  public String id() {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(String.join("\n", patterns).getBytes(StandardCharsets.UTF_8));
+      return BunHelpers.toHex(digest).substring(0, 8);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+    }
+  }
+
+  private static Pattern toRegex(final String glob) {
+    final StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      final char c = glob.charAt(i);
+      if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+        regex.append(".*");
+        i++;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  @Override
+  public String toString() {
+    return String.join(", ", patterns);
+  }
+}
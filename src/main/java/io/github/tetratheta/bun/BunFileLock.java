@@ -0,0 +1,252 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/// Lock on a file, held across threads of this JVM and across processes.
+///
+/// A lock is either exclusive ([#acquire(File, String, Duration)], [#tryAcquire(File)]) or shared
+/// ([#acquireShared(File, String, Duration)]); shared holders only exclude exclusive ones.
+///
+/// A [FileLock] is held per JVM, not per thread, and locking a region this JVM already holds
+/// fails instead of waiting. Every lock file is therefore guarded by a [ReentrantReadWriteLock]
+/// first, so threads of one daemon queue up in memory and only one of them contends with other
+/// processes. Shared holders of one daemon share a single shared [FileLock].
+///
+/// Usage:
+/// ```
+/// final BunFileLock lock = BunFileLock.acquire(lockFile, "installing Bun 1.1.0", timeout);
+/// try {
+///   // exclusive section
+/// } finally {
+///   lock.close();
+/// }
+/// ```
+/// The lock file itself is left in place; deleting it while another process waits on it would
+/// let a third process lock a different file of the same name.
+public final class BunFileLock implements AutoCloseable {
+  private static final Logger LOGGER = Logging.getLogger(BunFileLock.class);
+  private static final Map<String, ReentrantReadWriteLock> JVM_LOCKS = new ConcurrentHashMap<>();
+  private static final Map<String, Shared> SHARED = new ConcurrentHashMap<>();
+  private static final long POLL_MILLIS = 100;
+
+  private final Lock jvmLock;
+  private final FileChannel channel;
+  private final FileLock fileLock;
+  private final Shared shared;
+
+  private BunFileLock(final Lock jvmLock, final FileChannel channel, final FileLock fileLock, final Shared shared) {
+    this.jvmLock = jvmLock;
+    this.channel = channel;
+    this.fileLock = fileLock;
+    this.shared = shared;
+  }
+
+  /// Acquires the lock, waiting for other threads and processes holding it.
+  ///
+  /// @param lockFile the file to lock (created if missing)
+  /// @param purpose  what the lock protects, used in log and error messages
+  /// @param timeout  the maximum time to wait
+  /// @return the held lock; close it to release
+  /// @throws IOException if the lock cannot be acquired within `timeout`
+  public static BunFileLock acquire(final File lockFile, final String purpose, final Duration timeout) throws IOException {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    final Lock jvmLock = jvmLock(lockFile).writeLock();
+    lockInJvm(jvmLock, purpose, timeout);
+
+    FileChannel channel = null;
+    try {
+      Files.createDirectories(lockFile.getAbsoluteFile().getParentFile().toPath());
+      channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+      FileLock fileLock = channel.tryLock();
+      if (fileLock == null) {
+        LOGGER.lifecycle("Waiting for another process to finish {} ({})", purpose, lockFile);
+        while ((fileLock = channel.tryLock()) == null) {
+          if (System.nanoTime() - deadline > 0) {
+            throw new IOException("Timed out after " + timeout.toSeconds() + " s waiting for another process " + purpose + " (" + lockFile + ")");
+          }
+          Thread.sleep(POLL_MILLIS);
+        }
+      }
+      return new BunFileLock(jvmLock, channel, fileLock, null);
+    } catch (IOException | RuntimeException e) {
+      closeQuietly(channel);
+      jvmLock.unlock();
+      throw e;
+    } catch (InterruptedException e) {
+      closeQuietly(channel);
+      jvmLock.unlock();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for another process " + purpose);
+    }
+  }
+
+  /// Acquires the lock only if no other thread or process holds it.
+  ///
+  /// @param lockFile the file to lock (created if missing)
+  /// @return the held lock, or empty if it is held elsewhere
+  /// @throws IOException if the lock file cannot be opened
+  public static Optional<BunFileLock> tryAcquire(final File lockFile) throws IOException {
+    final Lock jvmLock = jvmLock(lockFile).writeLock();
+    if (!jvmLock.tryLock()) {
+      return Optional.empty();
+    }
+
+    FileChannel channel = null;
+    try {
+      Files.createDirectories(lockFile.getAbsoluteFile().getParentFile().toPath());
+      channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      final FileLock fileLock = channel.tryLock();
+      if (fileLock == null) {
+        closeQuietly(channel);
+        jvmLock.unlock();
+        return Optional.empty();
+      }
+      return Optional.of(new BunFileLock(jvmLock, channel, fileLock, null));
+    } catch (IOException | RuntimeException e) {
+      closeQuietly(channel);
+      jvmLock.unlock();
+      throw e;
+    }
+  }
+
+  /// Acquires the lock shared with other shared holders, waiting for exclusive holders.
+  ///
+  /// Used while an installation runs, so cleanup (which needs the exclusive lock) skips it.
+  ///
+  /// @param lockFile the file to lock (created if missing)
+  /// @param purpose  what the exclusive holders do, used in log and error messages
+  /// @param timeout  the maximum time to wait
+  /// @return the held lock; close it to release
+  /// @throws IOException if the lock cannot be acquired within `timeout`
+  public static BunFileLock acquireShared(final File lockFile, final String purpose, final Duration timeout) throws IOException {
+    final long deadline = System.nanoTime() + timeout.toNanos();
+    final Lock jvmLock = jvmLock(lockFile).readLock();
+    lockInJvm(jvmLock, purpose, timeout);
+
+    final Shared shared = SHARED.computeIfAbsent(lockFile.getAbsolutePath(), k -> new Shared());
+    try {
+      shared.acquire(lockFile, purpose, timeout, deadline);
+      return new BunFileLock(jvmLock, null, null, shared);
+    } catch (IOException | RuntimeException e) {
+      jvmLock.unlock();
+      throw e;
+    }
+  }
+
+  /// Releases the lock.
+  ///
+  /// @throws IOException if the lock file cannot be closed
+  @Override
+  public void close() throws IOException {
+    try {
+      if (shared != null) {
+        shared.release();
+      } else {
+        fileLock.release();
+        channel.close();
+      }
+    } finally {
+      jvmLock.unlock();
+    }
+  }
+
+  private static ReentrantReadWriteLock jvmLock(final File lockFile) {
+    return JVM_LOCKS.computeIfAbsent(lockFile.getAbsolutePath(), k -> new ReentrantReadWriteLock());
+  }
+
+  private static void lockInJvm(final Lock jvmLock, final String purpose, final Duration timeout) throws IOException {
+    try {
+      if (!jvmLock.tryLock()) {
+        LOGGER.lifecycle("Waiting for another build in this daemon to finish {}", purpose);
+        if (!jvmLock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+          throw new IOException("Timed out after " + timeout.toSeconds() + " s waiting for another build " + purpose);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for another build " + purpose);
+    }
+  }
+
+  private static void closeQuietly(final FileChannel channel) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Nothing was locked through it
+    }
+  }
+
+  /// The shared [FileLock] of one lock file, held while this daemon has any shared holder.
+  private static final class Shared {
+    private int holders;
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    synchronized void acquire(final File lockFile, final String purpose, final Duration timeout, final long deadline) throws IOException {
+      if (holders > 0) {
+        holders++;
+        return;
+      }
+
+      FileChannel opened = null;
+      try {
+        Files.createDirectories(lockFile.getAbsoluteFile().getParentFile().toPath());
+        opened = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        FileLock lock = opened.tryLock(0, Long.MAX_VALUE, true);
+        if (lock == null) {
+          LOGGER.lifecycle("Waiting for another process to finish {} ({})", purpose, lockFile);
+          while ((lock = opened.tryLock(0, Long.MAX_VALUE, true)) == null) {
+            if (System.nanoTime() - deadline > 0) {
+              throw new IOException("Timed out after " + timeout.toSeconds() + " s waiting for another process " + purpose + " (" + lockFile + ")");
+            }
+            Thread.sleep(POLL_MILLIS);
+          }
+        }
+        channel = opened;
+        fileLock = lock;
+        holders = 1;
+      } catch (IOException | RuntimeException e) {
+        closeQuietly(opened);
+        throw e;
+      } catch (InterruptedException e) {
+        closeQuietly(opened);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for another process " + purpose);
+      }
+    }
+
+    synchronized void release() throws IOException {
+      if (--holders > 0) {
+        return;
+      }
+      try {
+        fileLock.release();
+      } finally {
+        channel.close();
+        channel = null;
+        fileLock = null;
+      }
+    }
+  }
+}
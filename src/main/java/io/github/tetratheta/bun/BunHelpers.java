@@ -1,30 +1,20 @@
 package io.github.tetratheta.bun;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
-import java.util.Enumeration;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 /// Utility helpers used by the Bun Gradle plugin for downloading, verifying, extracting,
 /// and locating the Bun runtime.
@@ -32,14 +22,15 @@ import java.util.zip.ZipFile;
 /// Responsibilities include:
 ///   - Normalizing version strings (including supporting `"latest"`).
 ///   - Building the correct GitHub release asset URL for a platform-specific Bun zip.
-///   - Downloading files and computing SHA-256 hashes.
-///   - Discovering an expected SHA-256 from the upstream release metadata page.
-///   - Unzipping a Bun distribution into a destination directory.
+///   - Computing SHA-256 hashes (downloads go through [BunHttpTransport] and [BunDownloader]).
+///   - Unzipping a Bun distribution (from a file or straight from a stream) into a destination directory.
 ///   - Locating the Bun executable under an installation directory.
 ///
 /// **Note:** This is a pure utility class and is not meant to be instantiated.
 public class BunHelpers {
-  private static final String LATEST = "latest";
+  /// Version alias for the newest Bun release.
+  public static final String LATEST = "latest";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
   private BunHelpers() {
     throw new IllegalStateException("Utility class");
@@ -54,80 +45,18 @@ public class BunHelpers {
   /// @param sys     the target system/platform descriptor used to choose the correct asset name
   /// @return the download URI for the Bun zip asset
   public static URI bunZipUrl(final String version, final BunSystem sys) {
-    final String url = LATEST.equals(version) ? "https://github.com/oven-sh/bun/releases/latest/download/" + sys.zipName() : "https://github.com/oven-sh/bun/releases/download/bun-v" + version + "/" + sys.zipName();
-
-    return URI.create(url);
-  }
-
-  /// Downloads the content at `url` and writes it to `destination`.
-  ///
-  /// This method ensures the destination parent directory exists before writing.
-  ///
-  /// @param url                    the URL to download
-  /// @param destination            the destination file to write (will be overwritten if it exists)
-  /// @param disableSslVerification whether to disable SSL certificate verification
-  /// @throws IOException if the download fails or the destination cannot be written
-  public static void downloadUrlTo(final URL url, final File destination, final boolean disableSslVerification) throws IOException {
-    Files.createDirectories(destination.getParentFile().toPath());
-    if (disableSslVerification) {
-      disableSslVerification();
-    }
-    writeStream(url.openStream(), destination);
-  }
-
-  private static void disableSslVerification() {
-    try {
-      TrustManager[] trustAll = new TrustManager[]{new X509TrustManager() {
-        public void checkClientTrusted(X509Certificate[] certs, String authType) {}
-
-        public void checkServerTrusted(X509Certificate[] certs, String authType) {}
-
-        public X509Certificate[] getAcceptedIssuers() {return null;}
-      }};
-      SSLContext sc = SSLContext.getInstance("SSL");
-      sc.init(null, trustAll, new java.security.SecureRandom());
-      HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-      HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to disable SSL verification", e);
-    }
-  }
-
-  private static void writeStream(final InputStream source, final File destination) throws IOException {
-    try (final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(destination))) {
-      source.transferTo(outputStream);
-    }
+    return bunAssetUrl(version, sys.zipName());
   }
 
-  /// Fetches the expected SHA-256 for a given Bun asset zip from the release metadata page.
-  ///
-  /// The SHA values are published on the `bun-releases-for-updater` repository release pages
-  /// in a `sha256: <hex>` format. This method scrapes the HTML for the given asset name
-  /// and extracts the first SHA-256 match.
+  /// Builds the GitHub download URI for any asset of a Bun release.
   ///
-  /// @param version      the Bun version (use `"latest"` for newest)
-  /// @param assetZipName the exact asset file name to locate (e.g., `bun-linux-x64.zip`)
-  /// @return the expected SHA-256 digest as a lowercase hex string
-  /// @throws IOException           if the release page cannot be downloaded
-  /// @throws IllegalStateException if the SHA-256 cannot be found for the given asset on the page
-  public static String fetchExpectedSha256(final String version, final String assetZipName) throws IOException {
-    final String page = LATEST.equals(version) ? "https://github.com/oven-sh/bun-releases-for-updater/releases/latest" : "https://github.com/oven-sh/bun-releases-for-updater/releases/tag/bun-v" + version;
-
-    final String html = readAll(URI.create(page).toURL());
-    final Pattern shaPattern = Pattern.compile(Pattern.quote(assetZipName) + "[\\s\\S]{0,400}?sha256:\\s*([0-9a-fA-F]{64})");
-    final Matcher shaMatcher = shaPattern.matcher(html);
-
-    if (!shaMatcher.find()) {
-      throw new IllegalStateException("Could not find sha256 for " + assetZipName + " on " + page);
-    }
-
-    return shaMatcher.group(1).toLowerCase();
-  }
+  /// @param version   the Bun version (use `"latest"` for newest)
+  /// @param assetName the asset file name (e.g. `SHASUMS256.txt`)
+  /// @return the download URI for the asset
+  public static URI bunAssetUrl(final String version, final String assetName) {
+    final String url = LATEST.equals(version) ? "https://github.com/oven-sh/bun/releases/latest/download/" + assetName : "https://github.com/oven-sh/bun/releases/download/bun-v" + version + "/" + assetName;
 
-  private static String readAll(final URL url) throws IOException {
-    try (InputStream inputStream = url.openStream()) {
-      return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-    }
+    return URI.create(url);
   }
 
   /// Recursively searches for a Bun executable file under the provided root directory.
@@ -194,14 +123,22 @@ public class BunHelpers {
       }
     }
 
-    final byte[] digest = cryptographicHash.digest();
-    final StringBuilder sha = new StringBuilder(digest.length * 2);
+    return toHex(cryptographicHash.digest());
+  }
 
-    for (final byte b : digest) {
-      sha.append(String.format("%02x", b));
+  /// Formats a digest as a lowercase hexadecimal string.
+  ///
+  /// @param digest the digest bytes
+  /// @return the digest as a lowercase hex string
+  public static String toHex(final byte[] digest) {
+    final char[] sha = new char[digest.length * 2];
+
+    for (int i = 0; i < digest.length; i++) {
+      sha[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+      sha[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
     }
 
-    return sha.toString();
+    return new String(sha);
   }
 
   /// Removes a trailing `".zip"` suffix from a zip file name, if present.
@@ -215,31 +152,93 @@ public class BunHelpers {
   /// Extracts a zip file into the given destination directory.
   ///
   /// Directory entries are created as directories, file entries are written to disk.
-  /// Parent directories are created as needed.
+  /// Parent directories are created as needed. Entries are extracted concurrently by a
+  /// [BunZipExtractor] with up to [BunZipExtractor#DEFAULT_THREADS] workers.
   ///
   /// @param zip         the zip file to extract
   /// @param destination the destination directory where the zip contents will be written
   /// @throws IOException if the zip cannot be read or any entry cannot be written
   public static void unzip(final File zip, final File destination) throws IOException {
-    try (final ZipFile zipFile = new ZipFile(zip)) {
-      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    unzip(zip, destination, BunExtractionManifest.ALL);
+  }
 
-      while (entries.hasMoreElements()) {
-        final ZipEntry contents = entries.nextElement();
-        final File output = new File(destination, contents.getName());
+  /// Extracts the entries of a zip file selected by `manifest` into the given destination directory.
+  ///
+  /// Entries that are not selected are skipped without reading their data.
+  ///
+  /// @param zip         the zip file to extract
+  /// @param destination the destination directory where the zip contents will be written
+  /// @param manifest    which entries to extract
+  /// @return what was extracted and skipped
+  /// @throws IOException if the zip cannot be read or any entry cannot be written
+  public static BunZipExtractor.Report unzip(final File zip, final File destination, final BunExtractionManifest manifest) throws IOException {
+    return new BunZipExtractor(BunZipExtractor.DEFAULT_THREADS).extract(zip, destination, manifest);
+  }
+
+  /// Extracts a zip archive from a stream into the given destination directory.
+  ///
+  /// Entries are read with a [ZipInputStream] as the bytes arrive, so the archive never has
+  /// to exist on disk. Entry names that would resolve outside the destination directory are
+  /// rejected before anything is written. The stream is left open (and positioned after the last entry) so the
+  /// caller can drain the remaining central directory, for example to finish a digest.
+  ///
+  /// @param archive     the zip archive stream
+  /// @param destination the destination directory where the zip contents will be written
+  /// @throws IOException if the stream cannot be read or any entry cannot be written
+  public static void unzip(final InputStream archive, final File destination) throws IOException {
+    unzip(archive, destination, BunExtractionManifest.ALL);
+  }
+
+  /// Extracts the entries of a zip stream selected by `manifest` into the given destination directory.
+  ///
+  /// Entries that are not selected still have to be read past, but are never written.
+  ///
+  /// @param archive     the zip archive stream
+  /// @param destination the destination directory where the zip contents will be written
+  /// @param manifest    which entries to extract
+  /// @return what was extracted and skipped
+  /// @throws IOException if the stream cannot be read or any entry cannot be written
+  public static BunZipExtractor.Report unzip(final InputStream archive, final File destination, final BunExtractionManifest manifest) throws IOException {
+    final BunZipExtractor.Report report = new BunZipExtractor.Report();
+    final InputStream unclosable = new FilterInputStream(archive) {
+      @Override
+      public void close() {
+        // Leave the caller's stream open
+      }
+    };
+
+    final Path root = destination.toPath().toAbsolutePath().normalize();
+
+    try (final ZipInputStream zipStream = new ZipInputStream(unclosable)) {
+      ZipEntry contents;
+
+      while ((contents = zipStream.getNextEntry()) != null) {
+        // The archive is only verified once it has been read, so no entry may leave the destination
+        final Path output = BunZipExtractor.resolve(root, contents);
+
+        // Read past entries that are not needed; their sizes are only known afterwards
+        if (!manifest.includes(contents.getName())) {
+          zipStream.closeEntry();
+          report.skipped(contents);
+          continue;
+        }
 
         // If the content is a directory, make it and move on
         if (contents.isDirectory()) {
-          Files.createDirectories(output.toPath());
+          Files.createDirectories(output);
           continue;
         }
 
         // Ensure all parent directories are present before extracting a file
-        Files.createDirectories(output.getParentFile().toPath());
+        Files.createDirectories(output.getParent());
 
         // Extraction
-        writeStream(zipFile.getInputStream(contents), output);
+        Files.copy(zipStream, output, StandardCopyOption.REPLACE_EXISTING);
+        zipStream.closeEntry();
+        report.extracted(contents);
       }
     }
+
+    return report;
   }
 }
@@ -0,0 +1,76 @@
+package io.github.tetratheta.bun;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/// Access to the facts about the host that [BunSystem#detect(BunHostProbe)] bases its choice on.
+///
+/// [#current()] reads the running machine; other implementations can describe any host, which lets
+/// detection be checked for hosts the build does not run on:
+/// ```
+/// BunHostProbe alpineWithoutAvx2 = new BunHostProbe() {
+///   public String property(String name) {
+///     return name.equals("os.name") ? "Linux" : "amd64";
+///   }
+///
+///   public Optional<String> findLine(String file, Predicate<String> matcher) {
+///     return Optional.of(file.equals("/proc/cpuinfo") ? "flags : fpu sse4_2 avx" : "/lib/ld-musl-x86_64.so.1").filter(matcher);
+///   }
+/// };
+/// ```
+public interface BunHostProbe {
+  /// Returns a JVM system property such as `os.name` or `os.arch`.
+  ///
+  /// @param name the property name
+  /// @return the property value, or an empty string if it is not set
+  String property(String name);
+
+  /// Returns the first line of a file accepted by `matcher`.
+  ///
+  /// The file is read only up to that line, which keeps large files such as `/proc/cpuinfo` cheap.
+  ///
+  /// @param file    the absolute path of the file, e.g. `/proc/cpuinfo`
+  /// @param matcher which line to return
+  /// @return the first matching line, or empty if no line matches or the file cannot be read
+  Optional<String> findLine(String file, Predicate<String> matcher);
+
+  /// The machine the build runs on.
+  ///
+  /// @return a probe reading the JVM system properties and the local file system
+  static BunHostProbe current() {
+    return new Current();
+  }
+
+  /// Probe of the machine the build runs on.
+  record Current() implements BunHostProbe {
+    @Override
+    public String property(final String name) {
+      return System.getProperty(name, "");
+    }
+
+    @Override
+    public Optional<String> findLine(final String file, final Predicate<String> matcher) {
+      final Path path = Paths.get(file);
+      if (!Files.isReadable(path)) {
+        return Optional.empty();
+      }
+
+      try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          if (matcher.test(line)) {
+            return Optional.of(line);
+          }
+        }
+        return Optional.empty();
+      } catch (IOException e) {
+        return Optional.empty();
+      }
+    }
+  }
+}
@@ -0,0 +1,323 @@
+package io.github.tetratheta.bun;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/// HTTP transport used for every network call of the plugin.
+///
+/// A transport wraps two pooled [HttpClient]s, shared by all requests of a build:
+///   - one for metadata fetches (checksum manifests, release lists), which may use HTTP/2;
+///   - one for archive downloads ([#getArchive(URI, String...)]), restricted to HTTP/1.1. Over
+///     HTTP/2 the parallel byte ranges of [BunDownloader] would become streams multiplexed on a
+///     single TCP connection; over HTTP/1.1 each range gets a connection of its own.
+///
+/// Transports are owned by [BunInstallService] and therefore scoped to one build.
+///
+/// `file:` URIs (see [BunDistributionSource#directory(java.io.File)]) are read straight from the
+/// file system by [#open(URI)], [#getString(URI)] and [#probe(URI)].
+///
+/// Response bodies are watched for stalls: a body that delivers no data for the idle timeout is
+/// closed, so a hung connection fails the read instead of blocking the build. Failed requests
+/// are not retried here; see [BunRetryPolicy].
+///
+/// When SSL verification is disabled, only this transport's own [SSLContext] trusts every
+/// certificate and skips host name checks. No JVM-wide default is changed, so other plugins
+/// running in the same Gradle daemon are unaffected.
+public class BunHttpTransport {
+  /// Default time allowed to establish a connection.
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+  /// Default time allowed between sending a request and receiving the response headers.
+  public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+  /// Default time a response body may deliver no data before it is abandoned.
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+  /// Single daemon thread closing stalled response bodies of all transports.
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    final Thread thread = new Thread(runnable, "bun-http-watchdog");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final HttpClient client;
+  private final HttpClient archiveClient;
+  private final Duration readTimeout;
+  private final Duration idleTimeout;
+
+  /// Creates a transport.
+  ///
+  /// @param disableSslVerification whether to trust every certificate and host name
+  /// @param connectTimeout         the time allowed to establish a connection
+  /// @param readTimeout            the time allowed to wait for response headers
+  /// @param idleTimeout            the time a response body may deliver no data
+  public BunHttpTransport(final boolean disableSslVerification, final Duration connectTimeout, final Duration readTimeout, final Duration idleTimeout) {
+    final HttpClient.Builder builder = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).connectTimeout(connectTimeout);
+
+    if (disableSslVerification) {
+      builder.sslContext(trustAllContext());
+    }
+
+    this.client = builder.version(HttpClient.Version.HTTP_2).build();
+    this.archiveClient = builder.version(HttpClient.Version.HTTP_1_1).build();
+    this.readTimeout = readTimeout;
+    this.idleTimeout = idleTimeout;
+  }
+
+  /// Sends a `GET` request and returns the response with its body as a stream.
+  ///
+  /// The caller owns the body stream and must close it. Redirects are followed, so
+  /// [HttpResponse#uri()] is the URI that finally answered.
+  ///
+  /// @param uri     the URI to request
+  /// @param headers alternating header names and values
+  /// @return the response
+  /// @throws IOException if the request fails or is interrupted
+  public HttpResponse<InputStream> get(final URI uri, final String... headers) throws IOException {
+    return send(client, uri, headers);
+  }
+
+  /// Sends a `GET` request for (part of) an archive, always over HTTP/1.1.
+  ///
+  /// Concurrent calls use separate TCP connections, so parallel byte ranges really add
+  /// bandwidth. Otherwise this behaves like [#get(URI, String...)].
+  ///
+  /// @param uri     the URI to request
+  /// @param headers alternating header names and values
+  /// @return the response
+  /// @throws IOException if the request fails or is interrupted
+  public HttpResponse<InputStream> getArchive(final URI uri, final String... headers) throws IOException {
+    return send(archiveClient, uri, headers);
+  }
+
+  private HttpResponse<InputStream> send(final HttpClient client, final URI uri, final String... headers) throws IOException {
+    final HttpResponse.BodyHandler<InputStream> handler = info -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(), body -> new IdleTimeoutInputStream(body, uri, idleTimeout));
+    final HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(readTimeout).GET();
+    if (headers.length > 0) {
+      request.headers(headers);
+    }
+
+    try {
+      return client.send(request.build(), handler);
+    } catch (IOException e) {
+      // HttpClient reports e.g. refused connections without a message
+      if (e.getMessage() == null) {
+        throw new IOException(e.getClass().getSimpleName() + " while requesting " + uri, e);
+      }
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final InterruptedIOException interrupted = new InterruptedIOException("Interrupted while requesting " + uri);
+      interrupted.initCause(e);
+      throw interrupted;
+    }
+  }
+
+  /// Opens the content at `uri` as a single stream.
+  ///
+  /// @param uri the URI to read, either `file:` or HTTP(S)
+  /// @return the content stream, owned by the caller
+  /// @throws IOException if the file cannot be opened or the server does not answer with `200 OK`
+  public InputStream open(final URI uri) throws IOException {
+    if (isFile(uri)) {
+      return Files.newInputStream(Path.of(uri));
+    }
+
+    final HttpResponse<InputStream> response = get(uri);
+    expectStatus(response, 200, "requesting");
+    return response.body();
+  }
+
+  /// Fails unless `response` has the expected status; the body is closed on failure.
+  ///
+  /// @param response the response to check
+  /// @param expected the expected status code
+  /// @param action   what was being done, used in the error message (e.g. `"downloading"`)
+  /// @throws HttpStatusException if the status differs
+  public static void expectStatus(final HttpResponse<InputStream> response, final int expected, final String action) throws IOException {
+    if (response.statusCode() != expected) {
+      response.body().close();
+      throw new HttpStatusException(response.statusCode(), "HTTP " + response.statusCode() + " while " + action + " " + response.request().uri());
+    }
+  }
+
+  /// Fetches a small text document.
+  ///
+  /// @param uri the URI to read, either `file:` or HTTP(S)
+  /// @return the content decoded as UTF-8
+  /// @throws IOException if the content cannot be read
+  public String getString(final URI uri) throws IOException {
+    try (InputStream in = open(uri)) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /// Checks that `uri` is reachable and measures how long it takes to answer.
+  ///
+  /// For HTTP(S), a one-byte `Range` request is sent and only the response headers are
+  /// awaited. For `file:` URIs, the file must exist and be readable.
+  ///
+  /// @param uri the URI to probe
+  /// @return the time until the first response
+  /// @throws IOException if the resource is missing or unreachable
+  public Duration probe(final URI uri) throws IOException {
+    final long start = System.nanoTime();
+
+    if (isFile(uri)) {
+      if (!Files.isReadable(Path.of(uri))) {
+        throw new NoSuchFileException(Path.of(uri).toString());
+      }
+      return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    final HttpResponse<InputStream> response = get(uri, "Range", "bytes=0-0");
+    // Closing without reading aborts the body in case the server ignored the range
+    response.body().close();
+    if (response.statusCode() != 200 && response.statusCode() != 206) {
+      throw new HttpStatusException(response.statusCode(), "HTTP " + response.statusCode() + " while probing " + uri);
+    }
+    return Duration.ofNanos(System.nanoTime() - start);
+  }
+
+  /// Returns whether `uri` points to the local file system.
+  ///
+  /// @param uri the URI to check
+  /// @return `true` for `file:` URIs
+  public static boolean isFile(final URI uri) {
+    return "file".equalsIgnoreCase(uri.getScheme());
+  }
+
+  /// Thrown when a server answers with an unexpected HTTP status.
+  public static final class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /// Creates the exception.
+    ///
+    /// @param statusCode the HTTP status code received
+    /// @param message    the detail message
+    public HttpStatusException(final int statusCode, final String message) {
+      super(message);
+      this.statusCode = statusCode;
+    }
+
+    /// Returns the HTTP status code received.
+    ///
+    /// @return the status code
+    public int statusCode() {
+      return statusCode;
+    }
+  }
+
+  /// Body stream that is closed by the [#WATCHDOG] once it delivers no data for `idleTimeout`.
+  private static final class IdleTimeoutInputStream extends FilterInputStream {
+    private final URI uri;
+    private final Duration idleTimeout;
+    private final ScheduledFuture<?> check;
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean timedOut;
+
+    IdleTimeoutInputStream(final InputStream in, final URI uri, final Duration idleTimeout) {
+      super(in);
+      this.uri = uri;
+      this.idleTimeout = idleTimeout;
+      final long period = Math.max(10, idleTimeout.toMillis() / 4);
+      this.check = WATCHDOG.scheduleAtFixedRate(this::closeIfIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeIfIdle() {
+      if (System.nanoTime() - lastActivity > idleTimeout.toNanos()) {
+        timedOut = true;
+        try {
+          close();
+        } catch (IOException e) {
+          // Nothing more to do, the reader fails either way
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        final int b = super.read();
+        lastActivity = System.nanoTime();
+        return b;
+      } catch (IOException e) {
+        throw translate(e);
+      }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      try {
+        final int n = super.read(b, off, len);
+        lastActivity = System.nanoTime();
+        return n;
+      } catch (IOException e) {
+        throw translate(e);
+      }
+    }
+
+    private IOException translate(final IOException e) {
+      return timedOut ? new IOException("No data received from " + uri + " for " + idleTimeout.toSeconds() + " s", e) : e;
+    }
+
+    @Override
+    public void close() throws IOException {
+      check.cancel(false);
+      super.close();
+    }
+  }
+
+  private static SSLContext trustAllContext() {
+    // An X509ExtendedTrustManager is used on purpose: the JDK only performs its own host name
+    // check when wrapping a plain X509TrustManager, so this disables both checks for this client.
+    final TrustManager trustAll = new X509ExtendedTrustManager() {
+      public void checkClientTrusted(X509Certificate[] certs, String authType) {}
+
+      public void checkServerTrusted(X509Certificate[] certs, String authType) {}
+
+      public void checkClientTrusted(X509Certificate[] certs, String authType, Socket socket) {}
+
+      public void checkServerTrusted(X509Certificate[] certs, String authType, Socket socket) {}
+
+      public void checkClientTrusted(X509Certificate[] certs, String authType, SSLEngine engine) {}
+
+      public void checkServerTrusted(X509Certificate[] certs, String authType, SSLEngine engine) {}
+
+      public X509Certificate[] getAcceptedIssuers() {return new X509Certificate[0];}
+    };
+
+    try {
+      final SSLContext context = SSLContext.getInstance("TLS");
+      context.init(null, new TrustManager[]{trustAll}, new SecureRandom());
+      return context;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to disable SSL verification", e);
+    }
+  }
+}
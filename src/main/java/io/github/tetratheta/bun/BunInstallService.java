@@ -0,0 +1,546 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/// Shared [BuildService] that installs Bun at most once per build for each version/system combination.
+///
+/// Every `bunSetup` task in the build delegates to this service instead of installing on its own:
+///   - Completed installations are memoized for the lifetime of the build and recorded in an
+///     [BunInstallation] file, so later lookups never walk the installed tree.
+///   - Archives are verified against the published SHA-256 using the digest computed while downloading,
+///     and verified cache entries are marked so they are never checked again. Without a checksum nothing
+///     is installed, unless [Settings#allowUnverified()] is set.
+///   - Concurrent requests for the same distribution wait on a single in-flight download, and
+///     [BunFileLock]s extend this to other Gradle daemons sharing the cache or the Bun root directory.
+///   - Downloads are extracted into the machine-wide [BunDistributionCache] and linked into the
+///     requested Bun root directory.
+///   - In streaming mode (see [Settings#streaming()]), the archive is unpacked while it downloads
+///     and never stored on disk.
+///   - Only the entries selected by [Settings#extract()] are unpacked; partial entries are cached
+///     separately from full ones.
+///   - Archives come from the configured [BunDistributionSource]s. When several are configured, they
+///     are probed concurrently and tried fastest first, falling back to the next one on failure.
+///   - When Gradle runs offline (see [Settings#offline()]), only existing installations, the shared cache
+///     and local sources are used, and a missing distribution fails immediately instead of timing out.
+///   - Transient network failures are retried with backoff within one deadline per installation
+///     (see [BunRetryPolicy]).
+///   - All requests go through one pooled [BunHttpTransport] per distinct SSL/timeout setting, which
+///     is released together with the service at the end of the build.
+///   - When the build is done, installations and cached distributions that the configured
+///     [BunRetentionPolicy] no longer keeps are removed (see [BunCleanup]).
+///
+/// Gradle registers a separate instance for each build of a composite, so included builds do not
+/// share its memo; they share only the downloads in flight in the same JVM (a static map) and the
+/// [BunFileLock]s on the cache and the Bun root directories.
+///
+/// The service is registered by [BunPlugin] under [#NAME].
+public abstract class BunInstallService implements BuildService<BunInstallService.Params>, AutoCloseable {
+  /// Name under which the service is registered in the build's shared services.
+  public static final String NAME = "bunInstallService";
+
+  private static final Logger LOGGER = Logging.getLogger(BunInstallService.class);
+
+  /// Read buffer between the network and the streaming zip reader.
+  private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+
+  /// Downloads in progress across all builds in this JVM, including the builds of a composite, keyed by cache entry location.
+  private static final Map<String, CompletableFuture<Fetched>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+  /// Executables installed during this build, keyed by install directory and system.
+  private final Map<String, CompletableFuture<File>> installed = new ConcurrentHashMap<>();
+
+  /// HTTP transports of this build, keyed by SSL and timeout settings.
+  private final Map<String, BunHttpTransport> transports = new ConcurrentHashMap<>();
+
+  /// Installations and cache entries used during this build, which cleanup never removes.
+  private final Set<File> used = ConcurrentHashMap.newKeySet();
+
+  /// Bun root directories installed into during this build.
+  private final Set<File> bunRoots = ConcurrentHashMap.newKeySet();
+
+  private final BunDistributionCache cache;
+  private final BunChecksums checksums;
+
+  /// Parameters of the [BunInstallService].
+  public interface Params extends BuildServiceParameters {
+    /// Root directory of the machine-wide [BunDistributionCache].
+    ///
+    /// @return a directory property pointing to the shared cache root
+    DirectoryProperty getCacheDir();
+
+    /// Which unused installations and cached distributions are kept at the end of the build.
+    ///
+    /// @return a property holding the retention policy
+    Property<BunRetentionPolicy> getRetention();
+  }
+
+  /// Creates the service from its [Params].
+  public BunInstallService() {
+    this.cache = new BunDistributionCache(getParameters().getCacheDir().get().getAsFile());
+    this.checksums = new BunChecksums(cache.getRoot());
+  }
+
+  /// Ensures Bun is installed under the given root and returns its executable.
+  ///
+  /// The first caller for a given root/version/system performs the work; later callers
+  /// in the same build receive the memoized result.
+  ///
+  /// @param bunRoot  the Bun root directory to install into
+  /// @param version  the normalized Bun version
+  /// @param system   the target system/platform
+  /// @param settings how the distribution is fetched when it is not cached yet
+  /// @return the installed Bun executable
+  /// @throws IOException if installation fails
+  public File install(final File bunRoot, final String version, final BunSystem system, final Settings settings) throws IOException {
+    final File installDir = new File(bunRoot, version);
+    final String key = installDir.getAbsolutePath() + File.pathSeparator + system.name();
+
+    final File executable = once(installed, key, true, () -> doInstall(installDir, version, system, settings));
+
+    final File platformDir = BunInstallation.platformDir(bunRoot, version, system);
+    used.add(platformDir);
+    bunRoots.add(bunRoot);
+    BunCleanup.markUsed(BunCleanup.installMarker(platformDir));
+    return executable;
+  }
+
+  private File doInstall(final File installDir, final String version, final BunSystem system, final Settings settings) throws IOException {
+    final File platformDir = BunInstallation.platformDir(installDir.getParentFile(), version, system);
+    final Optional<File> bunExe = BunInstallation.locate(platformDir, version, system);
+
+    // Executable is present, no additional steps needed
+    if (bunExe.isPresent()) {
+      LOGGER.lifecycle("Bun already installed: {}", bunExe.get().getAbsolutePath());
+      useLinkedEntry(platformDir);
+      return bunExe.get();
+    }
+
+    // Builds in other daemons may install into the same directory; the first one installs, the rest reuse it
+    final BunFileLock lock = BunFileLock.acquire(BunInstallation.lockFile(platformDir), "installing Bun " + version + " (" + system.zipName() + ")", settings.retry().deadline());
+    try {
+      final Optional<File> raced = BunInstallation.locate(platformDir, version, system);
+      if (raced.isPresent()) {
+        LOGGER.lifecycle("Bun installed by another build: {}", raced.get().getAbsolutePath());
+        useLinkedEntry(platformDir);
+        return raced.get();
+      }
+
+      final File entry = resolveEntry(version, system, settings).entry();
+
+      LOGGER.lifecycle("Linking {} -> {}", entry.getAbsolutePath(), installDir.getAbsolutePath());
+      BunDistributionCache.link(entry, installDir);
+
+      // File modes are restored when the entry is extracted, and links share them with the cache
+      final File executable = BunHelpers.findBunExecutable(platformDir, system.exeName()).orElseThrow(() -> new IllegalStateException("Failed to locate " + system.exeName() + " after extraction under: " + platformDir));
+      BunInstallation.write(platformDir, version, system, executable, entry);
+
+      LOGGER.lifecycle("Bun ready: {}", executable.getAbsolutePath());
+      return executable;
+    } finally {
+      lock.close();
+    }
+  }
+
+  /// Keeps the cache entry an existing installation was linked from, as the installation is used.
+  private void useLinkedEntry(final File platformDir) {
+    BunInstallation.read(platformDir).flatMap(BunInstallation::entryDir).ifPresent(entry -> {
+      used.add(entry);
+      BunDistributionCache.markUsed(entry);
+    });
+  }
+
+  /// Ensures a distribution is in the shared [BunDistributionCache] without installing it anywhere.
+  ///
+  /// Used to fill the cache ahead of time, for example while baking a CI image with the
+  /// distributions of several versions and platforms.
+  ///
+  /// @param version  the normalized Bun version
+  /// @param system   the target system/platform
+  /// @param settings how the distribution is fetched when it is not cached yet
+  /// @return the verified cache entry and how it was obtained
+  /// @throws IOException if fetching or verification fails
+  public Fetched prefetch(final String version, final BunSystem system, final Settings settings) throws IOException {
+    return resolveEntry(version, system, settings);
+  }
+
+  /// Returns the cache entry for the version/system combination, downloading it if necessary.
+  ///
+  /// Only one download per entry runs at a time, across all Gradle processes sharing the cache;
+  /// concurrent callers wait for it and then reuse the committed entry.
+  private Fetched resolveEntry(final String version, final BunSystem system, final Settings settings) throws IOException {
+    final Fetched fetched = findOrFetch(version, system, settings);
+    used.add(fetched.entry());
+    BunDistributionCache.markUsed(fetched.entry());
+    return fetched;
+  }
+
+  private Fetched findOrFetch(final String version, final BunSystem system, final Settings settings) throws IOException {
+    final Optional<File> cached = cache.find(version, system, settings.extract());
+    if (cached.isPresent()) {
+      LOGGER.lifecycle("Bun found in shared cache: {}", cached.get().getAbsolutePath());
+      verifyCached(cached.get(), version, system, settings);
+      return new Fetched(cached.get(), 0, true);
+    }
+
+    // Re-check once this caller owns the download, another build may have just finished it
+    return once(IN_FLIGHT, cache.systemDir(version, system).getAbsolutePath() + File.pathSeparator + settings.extract().id(), false, () -> {
+      final BunFileLock lock = BunFileLock.acquire(cache.lockFile(version, system), "downloading Bun " + version + " (" + system.zipName() + ")", settings.retry().deadline());
+      try {
+        final Optional<File> raced = cache.find(version, system, settings.extract());
+        if (raced.isPresent()) {
+          LOGGER.lifecycle("Bun downloaded by another build: {}", raced.get().getAbsolutePath());
+          return new Fetched(raced.get(), 0, true);
+        }
+        return fetch(version, system, settings);
+      } finally {
+        lock.close();
+      }
+    });
+  }
+
+  /// Downloads the distribution from the best available source, falling back to the next one on I/O failure.
+  ///
+  /// Checksum mismatches are not retried elsewhere; they fail the build.
+  private Fetched fetch(final String version, final BunSystem system, final Settings settings) throws IOException {
+    if (settings.usableSources().isEmpty()) {
+      throw new IllegalStateException("Bun " + version + " (" + system.zipName() + ") is not installed and not in the shared cache at " + cache.systemDir(version, system).getAbsolutePath() + ", and Gradle is offline with no local distribution source configured.\nRun the build once without --offline, or add BunDistributionSource.directory(...) to bun.sources.");
+    }
+
+    final List<BunDistributionSource> sources = rank(version, system, settings);
+    final BunRetryPolicy.Budget budget = settings.retry().begin();
+    IOException failure = null;
+
+    for (BunDistributionSource source : sources) {
+      try {
+        return settings.streaming() ? stream(source, sources, version, system, settings, budget) : download(source, sources, version, system, settings, budget);
+      } catch (IOException e) {
+        LOGGER.warn("Could not fetch Bun {} from {}: {}", version, source, e.getMessage());
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+
+    throw failure != null ? failure : new IOException("No distribution source configured");
+  }
+
+  /// Orders the configured sources by how quickly they answer for the archive.
+  ///
+  /// All sources are probed concurrently. Healthy sources come first, fastest first; sources that
+  /// failed the probe are kept at the end, in declared order, as a last resort.
+  private List<BunDistributionSource> rank(final String version, final BunSystem system, final Settings settings) {
+    final List<BunDistributionSource> sources = settings.usableSources();
+    if (sources.size() < 2) {
+      return sources;
+    }
+
+    final BunHttpTransport transport = transport(settings);
+    final ExecutorService pool = Executors.newFixedThreadPool(sources.size());
+    try {
+      final List<CompletableFuture<Duration>> probes = new ArrayList<>();
+      for (BunDistributionSource source : sources) {
+        probes.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return transport.probe(source.resolve(version, system.zipName()));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, pool));
+      }
+
+      final Map<BunDistributionSource, Duration> latencies = new HashMap<>();
+      final List<String> report = new ArrayList<>();
+      for (int i = 0; i < sources.size(); i++) {
+        try {
+          final Duration latency = probes.get(i).join();
+          latencies.put(sources.get(i), latency);
+          report.add(sources.get(i) + " " + latency.toMillis() + " ms");
+        } catch (CompletionException e) {
+          final Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+          report.add(sources.get(i) + " unavailable (" + cause.getMessage() + ")");
+        }
+      }
+      LOGGER.lifecycle("Probed Bun sources: {}", String.join(", ", report));
+
+      final Duration unavailable = ChronoUnit.FOREVER.getDuration();
+      final List<BunDistributionSource> ranked = new ArrayList<>(sources);
+      ranked.sort(Comparator.comparing(source -> latencies.getOrDefault(source, unavailable)));
+      return ranked;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private Fetched download(final BunDistributionSource source, final List<BunDistributionSource> sources, final String version, final BunSystem system, final Settings settings, final BunRetryPolicy.Budget budget) throws IOException {
+    final File zipFile = cache.downloadFile(version, system);
+    final URI downloadUrl = source.resolve(version, system.zipName());
+
+    // Fetch the checksum manifest while the archive downloads
+    final CompletableFuture<Optional<String>> publishedSha = CompletableFuture.supplyAsync(() -> {
+      try {
+        return publishedSha256(version, system, settings, sources, budget);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+
+    try {
+      LOGGER.lifecycle("Downloading Bun: {} -> {}", downloadUrl, zipFile.getAbsolutePath());
+      final BunDownloader.Result result = new BunDownloader(transport(settings), settings.connections(), budget).download(downloadUrl, zipFile);
+      LOGGER.lifecycle("Downloaded {}", result.describe());
+
+      final Optional<String> expectedSha = join(publishedSha);
+      if (expectedSha.isPresent()) {
+        verifyIntegrity(expectedSha.get(), result.sha256(), system, "Deleted corrupted download.");
+      } else {
+        LOGGER.warn("Installing unverified {} of Bun {} (SHA-256 {})", system.zipName(), version, result.sha256());
+      }
+
+      LOGGER.lifecycle("Extracting {} -> {}", zipFile.getName(), cache.systemDir(version, system).getAbsolutePath());
+      final File entry = cache.store(version, system, zipFile, result.sha256(), settings.extract());
+      if (expectedSha.isPresent()) {
+        BunDistributionCache.markVerified(entry, expectedSha.get());
+      }
+      return new Fetched(entry, result.bytes(), false);
+    } finally {
+      Files.deleteIfExists(zipFile.toPath());
+    }
+  }
+
+  /// Installs straight from the HTTP response: the archive is hashed and unpacked as the bytes arrive.
+  ///
+  /// The expected digest is resolved before the first byte is read, and nothing is committed without
+  /// one. A failed attempt discards its partial tree, so a retry starts the stream over.
+  private Fetched stream(final BunDistributionSource source, final List<BunDistributionSource> sources, final String version, final BunSystem system, final Settings settings, final BunRetryPolicy.Budget budget) throws IOException {
+    final URI downloadUrl = source.resolve(version, system.zipName());
+    final long start = System.nanoTime();
+
+    final String expectedSha = publishedSha256(version, system, settings, sources, budget).orElseThrow(() -> new IllegalStateException("No SHA-256 is published for " + system.zipName() + " of Bun " + version + ", and a streamed install cannot be verified without one.\nSet bun.sha256, or disable bun.streamingInstall."));
+
+    LOGGER.lifecycle("Streaming Bun: {} -> {}", downloadUrl, cache.systemDir(version, system).getAbsolutePath());
+    final Fetched fetched = budget.call("Streaming " + downloadUrl, attempt -> {
+      try (InputStream archive = new BufferedInputStream(attempt.counting(transport(settings).open(downloadUrl)), STREAM_BUFFER_SIZE)) {
+        return new Fetched(cache.storeStream(version, system, archive, expectedSha, settings.extract()), attempt.bytes(), false);
+      }
+    });
+    BunDistributionCache.markVerified(fetched.entry(), expectedSha);
+    LOGGER.lifecycle("Streamed and extracted in {} ms", (System.nanoTime() - start) / 1_000_000);
+    return fetched;
+  }
+
+  /// Runs `action` at most once at a time per key; concurrent callers wait for the running result.
+  ///
+  /// Failed results are always removed from `results` so a later caller may retry. Successful
+  /// results are kept only when `memoize` is set, otherwise the key is released once done.
+  private static <T> T once(final Map<String, CompletableFuture<T>> results, final String key, final boolean memoize, final IOAction<T> action) throws IOException {
+    final CompletableFuture<T> mine = new CompletableFuture<>();
+    final CompletableFuture<T> running = results.putIfAbsent(key, mine);
+
+    if (running != null) {
+      return await(running);
+    }
+
+    try {
+      final T result = action.run();
+      mine.complete(result);
+      if (!memoize) {
+        results.remove(key, mine);
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      results.remove(key, mine);
+      mine.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  private static <T> T await(final CompletableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for Bun download", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException io) throw io;
+      if (e.getCause() instanceof RuntimeException re) throw re;
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /// Returns the shared transport for the SSL and timeout settings of `settings`.
+  private BunHttpTransport transport(final Settings settings) {
+    final String key = settings.disableSslVerification() + "|" + settings.connectTimeout() + "|" + settings.readTimeout() + "|" + settings.idleTimeout();
+    return transports.computeIfAbsent(key, k -> new BunHttpTransport(settings.disableSslVerification(), settings.connectTimeout(), settings.readTimeout(), settings.idleTimeout()));
+  }
+
+  /// How a distribution is fetched when it is not cached yet.
+  ///
+  /// @param disableSslVerification whether to disable SSL certificate verification
+  /// @param connections            the maximum number of parallel download connections
+  /// @param streaming              whether to unpack while downloading instead of saving the archive first
+  /// @param connectTimeout         the time allowed to establish a connection
+  /// @param readTimeout            the time allowed to wait for response headers
+  /// @param idleTimeout            the time a response body may deliver no data
+  /// @param retry                  how failed requests are retried
+  /// @param sources                where to fetch the distribution from, in order of preference
+  /// @param offline                whether Gradle runs offline, so only local sources may be used
+  /// @param extract                which entries of the archive are extracted
+  /// @param sha256                 the expected archive digest, or `null` to use the published checksum
+  /// @param allowUnverified        whether an archive without any checksum is installed with a warning instead of failing
+  public record Settings(boolean disableSslVerification, int connections, boolean streaming, Duration connectTimeout, Duration readTimeout, Duration idleTimeout, BunRetryPolicy retry, List<BunDistributionSource> sources, boolean offline, BunExtractionManifest extract, String sha256, boolean allowUnverified) implements Serializable {
+    /// Returns the sources that may be used: all of them when online, only local ones when offline.
+    ///
+    /// @return the usable sources, in order of preference
+    public List<BunDistributionSource> usableSources() {
+      return offline ? sources.stream().filter(BunDistributionSource::isLocal).toList() : sources;
+    }
+
+    /// Returns these settings with a different extraction manifest.
+    ///
+    /// @param manifest which entries of the archive are extracted
+    /// @return the settings extracting `manifest`
+    public Settings withExtract(final BunExtractionManifest manifest) {
+      return new Settings(disableSslVerification, connections, streaming, connectTimeout, readTimeout, idleTimeout, retry, sources, offline, manifest, sha256, allowUnverified);
+    }
+
+    /// Returns these settings with a different expected archive digest.
+    ///
+    /// @param digest the expected SHA-256 of the archive, or `null` to use the published checksum
+    /// @return the settings verifying against `digest`
+    public Settings withSha256(final String digest) {
+      return new Settings(disableSslVerification, connections, streaming, connectTimeout, readTimeout, idleTimeout, retry, sources, offline, extract, digest, allowUnverified);
+    }
+  }
+
+  /// Removes unused installations and cached distributions once the build is done.
+  ///
+  /// Only the Bun roots installed into during this build are cleaned, together with the shared
+  /// cache; anything this build used is kept. Failures are logged and never fail the build.
+  @Override
+  public void close() {
+    final BunCleanup cleanup = new BunCleanup(getParameters().getRetention().get(), used);
+    try {
+      for (File bunRoot : bunRoots) {
+        cleanup.cleanInstalls(bunRoot);
+      }
+      cleanup.cleanCache(cache);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Could not clean up unused Bun installations: {}", e.getMessage());
+    }
+  }
+
+  /// A distribution in the shared cache.
+  ///
+  /// @param entry  the cache entry directory
+  /// @param bytes  the number of bytes downloaded to obtain it, `0` when it was already cached
+  /// @param cached whether the entry was already in the cache
+  public record Fetched(File entry, long bytes, boolean cached) {
+  }
+
+  @FunctionalInterface
+  private interface IOAction<T> {
+    T run() throws IOException;
+  }
+
+  /// Verifies a cache entry that was stored without a published checksum at the time.
+  ///
+  /// The archive digest recorded in the entry is compared instead of re-hashing any file,
+  /// and a verified entry is never checked again unless a digest is pinned in the settings.
+  /// An entry that still cannot be verified is only reused when [Settings#allowUnverified()] is set.
+  private void verifyCached(final File entry, final String version, final BunSystem system, final Settings settings) throws IOException {
+    if (settings.sha256() == null && BunDistributionCache.isVerified(entry)) {
+      return;
+    }
+
+    final Optional<String> expectedSha = publishedSha256(version, system, settings, settings.usableSources(), settings.retry().begin());
+    if (expectedSha.isEmpty()) {
+      LOGGER.warn("Using unverified cache entry {}", entry.getAbsolutePath());
+      return;
+    }
+    verifyIntegrity(expectedSha.get(), BunDistributionCache.digestOf(entry), system, "Delete " + entry.getAbsolutePath() + " to download it again.");
+    BunDistributionCache.markVerified(entry, expectedSha.get());
+  }
+
+  /// Looks up the published SHA-256 of a Bun release asset from the release's checksum manifest.
+  ///
+  /// A digest pinned in the settings takes precedence and needs no manifest; otherwise the manifest comes
+  /// from the shared cache or the sources. A manifest that cannot be obtained fails, unless
+  /// [Settings#allowUnverified()] is set, in which case the result is empty. A manifest that does not
+  /// list the asset always fails.
+  private Optional<String> publishedSha256(final String version, final BunSystem system, final Settings settings, final List<BunDistributionSource> sources, final BunRetryPolicy.Budget budget) throws IOException {
+    if (settings.sha256() != null) {
+      return Optional.of(settings.sha256().toLowerCase(Locale.ROOT));
+    }
+
+    final Optional<String> sha;
+    try {
+      sha = checksums.lookup(version, system.zipName(), transport(settings), sources, budget);
+    } catch (IOException e) {
+      if (!settings.allowUnverified()) {
+        throw new IOException("Could not fetch " + BunChecksums.MANIFEST_NAME + " of Bun " + version + " to verify " + system.zipName() + ": " + e.getMessage() + "\nPin the digest with bun.sha256, or set bun.allowUnverified = true to install without verification.", e);
+      }
+      LOGGER.warn("Could not fetch {} of Bun {}, continuing unverified as allowed by bun.allowUnverified: {}", BunChecksums.MANIFEST_NAME, version, e.getMessage());
+      return Optional.empty();
+    }
+
+    if (sha.isEmpty()) {
+      throw new IllegalStateException(BunChecksums.MANIFEST_NAME + " of Bun " + version + " does not list " + system.zipName());
+    }
+    return sha;
+  }
+
+  private static Optional<String> join(final CompletableFuture<Optional<String>> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+      if (e.getCause() instanceof RuntimeException re) throw re;
+      throw e;
+    }
+  }
+
+  /// Compares a digest computed while downloading against the published SHA-256.
+  ///
+  /// @param expectedSha the published digest
+  /// @param actualSha   the digest computed during download
+  /// @param system      the target system/platform
+  /// @param remedy      what happened to (or can be done about) the corrupted data
+  /// @throws IllegalStateException if the digests differ
+  private static void verifyIntegrity(final String expectedSha, final String actualSha, final BunSystem system, final String remedy) {
+    if (!actualSha.equalsIgnoreCase(expectedSha)) {
+      throw new IllegalStateException("SHA-256 mismatch for " + system.zipName() + "\nExpected: " + expectedSha + "\nActual:   " + actualSha + "\n" + remedy);
+    }
+  }
+}
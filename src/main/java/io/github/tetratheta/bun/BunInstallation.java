@@ -0,0 +1,303 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// Record of an installed Bun distribution, kept as `install.json` in its platform directory:
+/// ```
+/// <bunRoot>/<version>/<platform>/install.json
+/// ```
+/// The file is written once the installation is complete and tells every later lookup where
+/// the executable is, so finding Bun costs one small read instead of a walk of the tree:
+/// ```
+/// {
+///   "version": "1.1.0",
+///   "system": "LINUX_X64",
+///   "executable": "bun",
+///   "size": 92371248,
+///   "modified": 1718000000000,
+///   "sha256": "...",
+///   "entry": "/home/me/.gradle/caches/bun/1.1.0/bun-linux-x64/<sha256>"
+/// }
+/// ```
+/// `entry` names the [BunDistributionCache] entry the installation was linked from, so using the
+/// installation keeps that entry from being cleaned up (see [BunCleanup]). It is absent when the
+/// origin is unknown, e.g. for an installation restored from the build cache.
+/// A record whose executable is missing or no longer has the recorded size is stale. Lookups
+/// then fall back to searching the tree once and write a fresh record.
+///
+/// The first lookup of a record also restores the executable bit and makes sure the executable
+/// is the one recorded, without reading it in the common case:
+///   - An executable installed on this machine still has the recorded modification time.
+///   - `bunSetup` may instead have restored the directory from the build cache, which gives its
+///     files new modification times. Such an executable is hashed once and compared with the
+///     recorded digest; the match is remembered in a marker next to the platform directory
+///     (`<bunRoot>/<version>/.<platform>.verified`), outside the cached output.
+///
+/// An executable whose digest does not match is reported as not installed.
+///
+/// Lookups are only made while tasks execute, and their results are kept for the lifetime of the
+/// daemon. A remembered result is reused as long as the modification time of `install.json` is
+/// unchanged, so repeated builds cost one `stat` per platform directory.
+///
+/// @param version    the Bun version
+/// @param system     the platform of the distribution
+/// @param executable the executable path relative to the platform directory, `/`-separated
+/// @param size       the executable size in bytes
+/// @param modified   the executable modification time when installed, in epoch milliseconds (`-1` if unknown)
+/// @param sha256     the lowercase hex SHA-256 of the executable
+/// @param entry      the absolute path of the cache entry it was linked from, or `null` if unknown
+public record BunInstallation(String version, BunSystem system, String executable, long size, long modified, String sha256, String entry) {
+  /// Name of the record file in the platform directory.
+  public static final String FILE_NAME = "install.json";
+
+  private static final Logger LOGGER = Logging.getLogger(BunInstallation.class);
+  private static final Map<String, Located> LOCATED = new ConcurrentHashMap<>();
+  private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|(-?\\d+))");
+
+  /// Returns the directory a version/system combination is installed into.
+  ///
+  /// @param bunRoot the Bun root directory
+  /// @param version the normalized Bun version
+  /// @param system  the target system/platform
+  /// @return `<bunRoot>/<version>/<platform>`
+  public static File platformDir(final File bunRoot, final String version, final BunSystem system) {
+    return new File(bunRoot, version + File.separator + BunHelpers.stripZip(system.zipName()));
+  }
+
+  /// Returns the lock guarding an installation.
+  ///
+  /// It is held exclusively while the installation is created or removed, and shared while Bun
+  /// runs from it. It sits next to the platform directory, so it is not part of the installation.
+  ///
+  /// @param platformDir the platform directory (see [#platformDir(File, String, BunSystem)])
+  /// @return `<bunRoot>/<version>/.<platform>.lock`
+  public static File lockFile(final File platformDir) {
+    return new File(platformDir.getParentFile(), "." + platformDir.getName() + ".lock");
+  }
+
+  /// Finds the installed executable, normally from the record alone.
+  ///
+  /// Without a valid record, the tree is searched once and, if the executable is found, the
+  /// record is regenerated so the next lookup is direct again. Found executables are remembered
+  /// per daemon until `install.json` changes.
+  ///
+  /// @param platformDir the platform directory (see [#platformDir(File, String, BunSystem)])
+  /// @param version     the normalized Bun version
+  /// @param system      the target system/platform
+  /// @return the executable, or empty if Bun is not installed there
+  public static Optional<File> locate(final File platformDir, final String version, final BunSystem system) {
+    final File recordFile = new File(platformDir, FILE_NAME);
+    final String key = memoKey(recordFile, version, system);
+    final long modified = recordFile.lastModified();
+    final Located located = LOCATED.get(key);
+    if (located != null && modified != 0 && located.modified() == modified) {
+      return Optional.of(located.executable());
+    }
+
+    final Optional<File> found = lookup(platformDir, version, system);
+    if (found.isPresent()) {
+      LOCATED.put(key, new Located(recordFile.lastModified(), found.get()));
+    } else {
+      LOCATED.remove(key);
+    }
+    return found;
+  }
+
+  private static Optional<File> lookup(final File platformDir, final String version, final BunSystem system) {
+    final Optional<BunInstallation> recorded = read(platformDir);
+    if (recorded.isPresent() && recorded.get().matches(platformDir, version, system)) {
+      final File executable = recorded.get().resolve(platformDir);
+      if (!recorded.get().intact(platformDir, executable)) {
+        LOGGER.warn("{} does not match the SHA-256 recorded in {}. Delete {} to install Bun again.", executable, FILE_NAME, platformDir);
+        return Optional.empty();
+      }
+      return Optional.of(executable);
+    }
+
+    final Optional<File> found = BunHelpers.findBunExecutable(platformDir, system.exeName());
+    if (found.isPresent()) {
+      try {
+        write(platformDir, version, system, found.get(), null);
+      } catch (IOException e) {
+        LOGGER.info("Could not write {} in {}: {}", FILE_NAME, platformDir, e.getMessage());
+      }
+    }
+    return found;
+  }
+
+  /// Records a completed installation.
+  ///
+  /// @param platformDir the platform directory
+  /// @param version     the normalized Bun version
+  /// @param system      the target system/platform
+  /// @param executable  the installed executable inside `platformDir`
+  /// @param entry       the cache entry the installation was linked from, or `null` if unknown
+  /// @return the written record
+  /// @throws IOException if the executable cannot be hashed or the record cannot be written
+  public static BunInstallation write(final File platformDir, final String version, final BunSystem system, final File executable, final File entry) throws IOException {
+    final String sha256;
+    try {
+      sha256 = BunHelpers.sha256(executable);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+    }
+
+    final String relative = platformDir.toPath().relativize(executable.toPath()).toString().replace(File.separatorChar, '/');
+    final BunInstallation installation = new BunInstallation(version, system, relative, executable.length(), executable.lastModified(), sha256, entry == null ? null : entry.getAbsolutePath());
+
+    final Path tmp = Files.createTempFile(platformDir.toPath(), FILE_NAME, ".tmp");
+    Files.writeString(tmp, installation.toJson(), StandardCharsets.UTF_8);
+    try {
+      Files.move(tmp, new File(platformDir, FILE_NAME).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, new File(platformDir, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // The executable was just hashed, so the next lookup need not check it again
+    final File recordFile = new File(platformDir, FILE_NAME);
+    LOCATED.put(memoKey(recordFile, version, system), new Located(recordFile.lastModified(), executable));
+    return installation;
+  }
+
+  /// Reads the record of a platform directory.
+  ///
+  /// @param platformDir the platform directory
+  /// @return the record, or empty if it is missing or unreadable
+  public static Optional<BunInstallation> read(final File platformDir) {
+    final String json;
+    try {
+      json = Files.readString(new File(platformDir, FILE_NAME).toPath(), StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      LOGGER.info("Could not read {} in {}: {}", FILE_NAME, platformDir, e.getMessage());
+      return Optional.empty();
+    }
+
+    String version = null;
+    String system = null;
+    String executable = null;
+    String sha256 = null;
+    String entry = null;
+    long size = -1;
+    long modified = -1;
+
+    final Matcher matcher = FIELD.matcher(json);
+    while (matcher.find()) {
+      final String value = matcher.group(2) != null ? unescape(matcher.group(2)) : matcher.group(3);
+      switch (matcher.group(1)) {
+        case "version" -> version = value;
+        case "system" -> system = value;
+        case "executable" -> executable = value;
+        case "sha256" -> sha256 = value;
+        case "entry" -> entry = value;
+        case "size" -> size = Long.parseLong(value);
+        case "modified" -> modified = Long.parseLong(value);
+        default -> {
+          // Unknown fields are ignored, so newer plugin versions may add more
+        }
+      }
+    }
+
+    if (version == null || system == null || executable == null || sha256 == null || size < 0) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(new BunInstallation(version, BunSystem.valueOf(system), executable, size, modified, sha256, entry));
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  /// Returns the executable this record points to.
+  ///
+  /// @param platformDir the platform directory holding the record
+  /// @return the executable file
+  public File resolve(final File platformDir) {
+    return new File(platformDir, executable.replace('/', File.separatorChar));
+  }
+
+  /// Returns the cache entry this installation was linked from.
+  ///
+  /// @return the entry directory, or empty if unknown
+  public Optional<File> entryDir() {
+    return Optional.ofNullable(entry).map(File::new);
+  }
+
+  private boolean matches(final File platformDir, final String expectedVersion, final BunSystem expectedSystem) {
+    final File file = resolve(platformDir);
+    return version.equals(expectedVersion) && system == expectedSystem && file.isFile() && file.length() == size;
+  }
+
+  /// Returns the marker remembering that a restored executable matched its record.
+  ///
+  /// @param platformDir the platform directory
+  /// @return `<bunRoot>/<version>/.<platform>.verified`
+  public static File verifiedMarker(final File platformDir) {
+    return new File(platformDir.getParentFile(), "." + platformDir.getName() + ".verified");
+  }
+
+  private boolean intact(final File platformDir, final File file) {
+    if (!file.canExecute() && !file.setExecutable(true)) {
+      return false;
+    }
+    if (modified > 0 && file.lastModified() == modified) {
+      return true;
+    }
+
+    // Restored from the build cache, or recorded by an older plugin version
+    final File marker = verifiedMarker(platformDir);
+    final String stamp = file.lastModified() + "," + file.length() + "," + sha256;
+    try {
+      if (marker.isFile() && stamp.equals(Files.readString(marker.toPath(), StandardCharsets.UTF_8).trim())) {
+        return true;
+      }
+      if (!sha256.equalsIgnoreCase(BunHelpers.sha256(file))) {
+        return false;
+      }
+      Files.writeString(marker.toPath(), stamp, StandardCharsets.UTF_8);
+      return true;
+    } catch (IOException e) {
+      return false;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+    }
+  }
+
+  private String toJson() {
+    final String origin = entry == null ? "" : String.format(Locale.ROOT, ",%n  \"entry\": \"%s\"", escape(entry));
+    return String.format(Locale.ROOT, "{%n  \"version\": \"%s\",%n  \"system\": \"%s\",%n  \"executable\": \"%s\",%n  \"size\": %d,%n  \"modified\": %d,%n  \"sha256\": \"%s\"%s%n}%n", escape(version), system.name(), escape(executable), size, modified, sha256, origin);
+  }
+
+  private record Located(long modified, File executable) {
+  }
+
+  private static String memoKey(final File recordFile, final String version, final BunSystem system) {
+    return recordFile.getAbsolutePath() + '|' + version + '|' + system.name();
+  }
+
+  private static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static String unescape(final String value) {
+    return value.replaceAll("\\\\(.)", "$1");
+  }
+}
@@ -0,0 +1,157 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// [ValueSource] that resolves `"latest"` to the concrete version of the newest Bun release.
+///
+/// The answer is pinned in a small lock file next to the installations:
+/// ```
+/// <rootProject>/.gradle/bun/latest.lock
+/// ```
+/// Until the configured TTL has passed, the pinned version is returned without any network
+/// access, so installation directories, cache keys and up-to-date checks stay stable. After that,
+/// the GitHub releases API is asked again with the previous `ETag`; an unchanged release costs a
+/// single `304 Not Modified` response and only renews the pin.
+///
+/// While Gradle is offline, the pinned version is used no matter how old it is, and resolving
+/// fails immediately if nothing has been pinned yet.
+///
+/// When the lookup fails but a version was pinned before, the stale pin is used with a warning,
+/// and the failed attempt is recorded so the lookup is not retried for [#FAILURE_BACKOFF]
+/// (or the TTL, if shorter).
+///
+/// Using a [ValueSource] lets Gradle's Configuration Cache treat the resolved version as an
+/// external input: a cached configuration is reused exactly as long as the pin does not move.
+public abstract class BunLatestVersionSource implements ValueSource<String, BunLatestVersionSource.Params> {
+  /// Default time a resolved version is trusted before the releases API is asked again.
+  public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+  /// Time a failed lookup is not retried while a stale pin can still be used.
+  public static final Duration FAILURE_BACKOFF = Duration.ofHours(1);
+
+  private static final Logger LOGGER = Logging.getLogger(BunLatestVersionSource.class);
+  private static final URI LATEST_RELEASE = URI.create("https://api.github.com/repos/oven-sh/bun/releases/latest");
+  private static final Pattern TAG_NAME = Pattern.compile("\"tag_name\"\\s*:\\s*\"bun-v([^\"]+)\"");
+  private static final String KEY = "version";
+  private static final String COMMENT = "Bun version \"latest\" resolved to; delete to re-resolve";
+
+  /// Parameters of the [BunLatestVersionSource].
+  public interface Params extends ValueSourceParameters {
+    /// File the resolved version is pinned in.
+    ///
+    /// @return a file property pointing to the lock file
+    RegularFileProperty getLockFile();
+
+    /// How long a pinned version is used before it is checked again.
+    ///
+    /// @return a property representing the TTL
+    Property<Duration> getTtl();
+
+    /// Whether to disable SSL certificate verification for the lookup.
+    ///
+    /// @return a property representing whether SSL verification is disabled
+    Property<Boolean> getDisableSslVerification();
+
+    /// Time allowed to establish a connection.
+    ///
+    /// @return a property representing the connect timeout
+    Property<Duration> getConnectTimeout();
+
+    /// Time allowed to wait for the response.
+    ///
+    /// @return a property representing the read timeout
+    Property<Duration> getReadTimeout();
+
+    /// Time a response body may deliver no data.
+    ///
+    /// @return a property representing the idle timeout
+    Property<Duration> getIdleTimeout();
+
+    /// How a failed lookup is retried.
+    ///
+    /// @return a property representing the retry policy
+    Property<BunRetryPolicy> getRetryPolicy();
+
+    /// Whether Gradle runs offline, so the releases API must not be contacted.
+    ///
+    /// @return a property representing whether offline mode is enabled
+    Property<Boolean> getOffline();
+  }
+
+  @Override
+  public String obtain() {
+    final File lockFile = getParameters().getLockFile().get().getAsFile();
+    final Optional<BunPin> pinned = BunPin.read(lockFile, KEY);
+    final Instant now = Instant.now();
+    final Duration ttl = getParameters().getTtl().get();
+
+    if (pinned.isPresent() && pinned.get().isFresh(now, ttl)) {
+      return pinned.get().value();
+    }
+
+    if (getParameters().getOffline().get()) {
+      if (pinned.isPresent()) {
+        LOGGER.info("Offline, staying on pinned Bun {}", pinned.get().value());
+        return pinned.get().value();
+      }
+      throw new IllegalStateException("Cannot resolve Bun version \"latest\" while offline: no version is pinned in " + lockFile + ".\nSet bun.version explicitly, or run the build once without --offline.");
+    }
+
+    final BunHttpTransport transport = new BunHttpTransport(getParameters().getDisableSslVerification().get(), getParameters().getConnectTimeout().get(), getParameters().getReadTimeout().get(), getParameters().getIdleTimeout().get());
+    final List<String> headers = new ArrayList<>(List.of("Accept", "application/vnd.github+json"));
+    pinned.filter(pin -> !pin.etag().isEmpty()).ifPresent(pin -> headers.addAll(List.of("If-None-Match", pin.etag())));
+
+    final BunPin resolved;
+    try {
+      resolved = getParameters().getRetryPolicy().get().begin().call("Resolving latest Bun version", attempt -> {
+        final HttpResponse<InputStream> response = transport.get(LATEST_RELEASE, headers.toArray(String[]::new));
+        try (InputStream body = response.body()) {
+          if (response.statusCode() == 304 && pinned.isPresent()) {
+            return pinned.get().renewed(now);
+          }
+
+          BunHttpTransport.expectStatus(response, 200, "requesting");
+          final Matcher matcher = TAG_NAME.matcher(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+          if (!matcher.find()) {
+            throw new IOException("No bun-v<version> tag_name in " + LATEST_RELEASE);
+          }
+          return new BunPin(matcher.group(1), response.headers().firstValue("ETag").orElse(""), now, null);
+        }
+      });
+    } catch (IOException e) {
+      if (pinned.isPresent()) {
+        LOGGER.warn("Could not check for a newer Bun release, staying on {}: {}", pinned.get().value(), e.getMessage());
+        pinned.get().failedAt(now).write(lockFile, KEY, COMMENT);
+        return pinned.get().value();
+      }
+      throw new UncheckedIOException("Could not resolve the latest Bun version", e);
+    }
+
+    if (pinned.isPresent() && !pinned.get().value().equals(resolved.value())) {
+      LOGGER.lifecycle("Latest Bun release moved from {} to {}", pinned.get().value(), resolved.value());
+    }
+
+    resolved.write(lockFile, KEY, COMMENT);
+    return resolved.value();
+  }
+}
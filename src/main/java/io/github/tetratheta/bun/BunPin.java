@@ -0,0 +1,126 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.Properties;
+
+/// A value looked up from the GitHub releases API and pinned in a properties file until it is checked again.
+///
+/// [BunLatestVersionSource] pins the version `"latest"` resolved to, [BunVersionRangeSource] the index
+/// of all release versions. Besides the value, the file records the response validator (`ETag`), the time
+/// the value was last confirmed and, if a later check failed, the time of that failure:
+/// ```
+/// version=1.1.0
+/// etag="abc"
+/// checked=2024-01-01T00\:00\:00Z
+/// failed=2024-01-02T00\:00\:00Z
+/// ```
+///
+/// @param value   the pinned value
+/// @param etag    the `ETag` of the response the value came from, or empty if there was none
+/// @param checked when the value was last confirmed
+/// @param failed  when a later check failed, or `null` if the last check succeeded
+public record BunPin(String value, String etag, Instant checked, Instant failed) {
+  private static final Logger LOGGER = Logging.getLogger(BunPin.class);
+
+  /// Returns whether the value may be used without checking it again.
+  ///
+  /// It is fresh until `ttl` has passed since it was confirmed. After a failed check it stays fresh for
+  /// [BunLatestVersionSource#FAILURE_BACKOFF] (or `ttl`, if shorter), so a broken network is not retried
+  /// on every build.
+  ///
+  /// @param now the current time
+  /// @param ttl how long a confirmed value is trusted
+  /// @return whether the value is fresh
+  public boolean isFresh(final Instant now, final Duration ttl) {
+    final Duration backoff = ttl.compareTo(BunLatestVersionSource.FAILURE_BACKOFF) < 0 ? ttl : BunLatestVersionSource.FAILURE_BACKOFF;
+    return checked.plus(ttl).isAfter(now) || (failed != null && failed.plus(backoff).isAfter(now));
+  }
+
+  /// Returns this pin confirmed again, e.g. after a `304 Not Modified` response.
+  ///
+  /// @param now the current time
+  /// @return the renewed pin
+  public BunPin renewed(final Instant now) {
+    return new BunPin(value, etag, now, null);
+  }
+
+  /// Returns this pin with a failed check recorded.
+  ///
+  /// @param now the time of the failure
+  /// @return the pin backing off from further checks
+  public BunPin failedAt(final Instant now) {
+    return new BunPin(value, etag, checked, now);
+  }
+
+  /// Reads a pin from `file`.
+  ///
+  /// A missing, empty or damaged file is treated as no pin, so it is looked up and rewritten.
+  ///
+  /// @param file the properties file
+  /// @param key  the property holding the value
+  /// @return the pin, or empty if there is none
+  public static Optional<BunPin> read(final File file, final String key) {
+    if (!file.isFile()) {
+      return Optional.empty();
+    }
+
+    final Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      props.load(in);
+      final String value = props.getProperty(key, "").trim();
+      if (value.isEmpty()) {
+        return Optional.empty();
+      }
+      final String failed = props.getProperty("failed");
+      return Optional.of(new BunPin(value, props.getProperty("etag", ""), Instant.parse(props.getProperty("checked", Instant.EPOCH.toString())), failed == null ? null : Instant.parse(failed)));
+    } catch (IOException | IllegalArgumentException | DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  /// Atomically replaces `file` with this pin.
+  ///
+  /// The pin only saves lookups, so a failure is logged and otherwise ignored.
+  ///
+  /// @param file    the properties file
+  /// @param key     the property holding the value
+  /// @param comment the comment written at the top of the file
+  public void write(final File file, final String key, final String comment) {
+    final Properties props = new Properties();
+    props.setProperty(key, value);
+    props.setProperty("etag", etag);
+    props.setProperty("checked", checked.toString());
+    if (failed != null) {
+      props.setProperty("failed", failed.toString());
+    }
+
+    try {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+      final Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        props.store(out, comment);
+      }
+      try {
+        Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not write {}: {}", file, e.getMessage());
+    }
+  }
+}
@@ -3,35 +3,50 @@ package io.github.tetratheta.bun;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Provider;
 
 import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /// Gradle plugin that downloads and runs the [Bun](https://bun.sh/) runtime in a local project.
 ///
 /// This plugin:
 ///   - Creates a `bun` extension ([BunExtension]) so builds can configure the Bun `version` and `system`.
-///   - Registers a `bunSetup` task that downloads/unpacks Bun into `<project>/.gradle/bun/...`.
+///   - Registers a `bunSetup` task that installs Bun into `<project>/.gradle/bun/...`. Each project has its own,
+///     so no project configures another one.
 ///   - Registers a small set of convenience tasks (`bunInstall`, `bunTest`, `bunRun`, `bunInstallPkg`)
 ///     that execute Bun commands using the installed executable.
 ///
-/// Installation is isolated per project and per version/system combination to avoid interfering with any global Bun install.
+/// Installation is isolated per build and per version/system combination to avoid interfering with any global Bun install.
+/// Only when enabled with [BunExtension#getUseSystemBun()], a Bun already on this machine in the resolved version is
+/// used as it is instead (see [BunDiscoverySource]).
+/// Every `bunSetup` delegates to a build-wide [BunInstallService], which downloads and extracts each distribution
+/// once and links it into the projects; distributions are shared between builds through a [BunDistributionCache]
+/// in the Gradle user home.
 /// ## Configuration
 /// ```
 /// bun {
-///   version = "1.1.0" // defaults to "latest"
+///   version = "1.1.0" // or a range such as "1.1.x"; defaults to "latest"
 ///   system = BunSystem.WINDOWS_X64 // defaults to auto-detect
 /// }
 /// ```
 /// ## Tasks
 ///   - `bunSetup`: Downloads and installs Bun (dependency of all Bun execution tasks).
+///   - `bunPrefetch`: Fills the shared distribution cache with several versions/systems ([BunPrefetchTask]).
 ///   - `bunInstall`: Runs `bun install` in the project directory.
 ///   - `bunTest`: Runs `bun test` in the project directory.
 ///   - `bunRun`: Runs `bun run <script>` where `<script>` comes from `-PbunScript=...`.
 ///   - `bunInstallPkg`: Runs `bun add <package>` where `<package>` comes from `-PbunPkg=...`.
 ///
 /// ## Notes
-///   - This plugin currently wires the Bun executable lazily via [Provider]s to keep configuration time fast.
+///   - The Bun executable is only looked up when a task runs (see [BunInstallation]), so configuring
+///     the build performs no file system access for Bun.
 ///   - Only a subset of Bun commands are implemented as tasks at the moment. I'll get to more eventually.
 public class BunPlugin implements Plugin<Project> {
   /// Applies the plugin to a Gradle [Project].
@@ -48,9 +63,6 @@ public class BunPlugin implements Plugin<Project> {
     // Extension used by build scripts to configure version/system
     final BunExtension extension = project.getExtensions().create("bun", BunExtension.class);
 
-    // Resolve configured version with a safe default. "latest" is treated as a valid value by this plugin
-    final Provider<String> version = extension.getVersion().map(String::trim).orElse("latest");
-
     // Resolve configured system with an auto-detect fallback.
     // A ValueSource is used so Gradle's Configuration Cache can track the OS/arch read
     // as an external input rather than seeing it as a bare System.getProperty() call.
@@ -59,13 +71,108 @@ public class BunPlugin implements Plugin<Project> {
     // Resolve SSL verification setting with a default of false (verification enabled)
     final Provider<Boolean> disableSslVerification = extension.getDisableSslVerification().orElse(false);
 
-    // Root folder under the project where Bun artifacts are stored
+    // Resolve parallel download connections with a default of BunDownloader.DEFAULT_CONNECTIONS
+    final Provider<Integer> downloadConnections = extension.getDownloadConnections().orElse(BunDownloader.DEFAULT_CONNECTIONS);
+
+    // Resolve streaming installation with a default of false (download the archive, then extract)
+    final Provider<Boolean> streamingInstall = extension.getStreamingInstall().orElse(false);
+
+    // Resolve HTTP timeouts with the defaults of BunHttpTransport
+    final Provider<Duration> connectTimeout = extension.getConnectTimeout().orElse(BunHttpTransport.DEFAULT_CONNECT_TIMEOUT);
+    final Provider<Duration> readTimeout = extension.getReadTimeout().orElse(BunHttpTransport.DEFAULT_READ_TIMEOUT);
+    final Provider<Duration> idleTimeout = extension.getIdleTimeout().orElse(BunHttpTransport.DEFAULT_IDLE_TIMEOUT);
+
+    // Resolve the retry policy with the defaults of BunRetryPolicy
+    final Provider<Integer> retryAttempts = extension.getRetryAttempts().orElse(BunRetryPolicy.DEFAULT_MAX_ATTEMPTS);
+    final Provider<Duration> retryBackoff = extension.getRetryBackoff().orElse(BunRetryPolicy.DEFAULT_INITIAL_BACKOFF);
+    final Provider<Duration> downloadDeadline = extension.getDownloadDeadline().orElse(BunRetryPolicy.DEFAULT_DEADLINE);
+    final Provider<BunRetryPolicy> retryPolicy = project.getProviders().provider(() -> new BunRetryPolicy(retryAttempts.get(), retryBackoff.get(), BunRetryPolicy.DEFAULT_MAX_BACKOFF, downloadDeadline.get()));
+
+    // Resolve cleanup of unused installs with the defaults of BunRetentionPolicy
+    final Provider<Duration> retentionPeriod = extension.getRetentionPeriod().orElse(BunRetentionPolicy.DEFAULT_MAX_UNUSED);
+    final Provider<Integer> retentionVersions = extension.getRetentionVersions().orElse(BunRetentionPolicy.DEFAULT_MAX_VERSIONS);
+    final Provider<Long> retentionBytes = extension.getRetentionBytes().orElse(BunRetentionPolicy.DEFAULT_MAX_BYTES);
+    final Provider<BunRetentionPolicy> retentionPolicy = project.getProviders().provider(() -> new BunRetentionPolicy(retentionPeriod.get(), retentionVersions.get(), retentionBytes.get()));
+
+    // Resolve offline mode from Gradle's --offline flag unless set explicitly
+    final Provider<Boolean> offline = extension.getOffline().orElse(project.getGradle().getStartParameter().isOffline());
+
+    // Resolve extracted entries with a default of the executable of the selected system
+    final Provider<BunExtractionManifest> explicitExtract = extension.getExtract().map(list -> list.isEmpty() ? null : new BunExtractionManifest(list));
+    final Provider<BunExtractionManifest> extract = explicitExtract.orElse(system.map(BunExtractionManifest::forSystem));
+
+    // Resolve the pinned archive digest, unset by default (verify against the published checksum)
+    final Provider<String> sha256 = extension.getSha256().map(s -> s.trim().toLowerCase(Locale.ROOT));
+
+    // Resolve unverified installs with a default of false (fail when no checksum can be obtained)
+    final Provider<Boolean> allowUnverified = extension.getAllowUnverified().orElse(false);
+
+    // Folder where this project's Bun installations are stored
     final Directory bunRoot = project.getLayout().getProjectDirectory().dir(".gradle/bun");
 
-    final Provider<File> bunExeProvider = system.zip(version, (s, v) -> {
-      final String zipBase = s.zipName().endsWith(".zip") ? s.zipName().substring(0, s.zipName().length() - 4) : s.zipName();
-      File installDir = new File(bunRoot.getAsFile(), BunHelpers.normalizeVersion(v) + File.separator + zipBase);
-      return BunHelpers.findBunExecutable(installDir, s.exeName()).orElse(new File(installDir, s.exeName()));
+    // The pinned "latest" release is shared by every project of this build; the root directory is read through
+    // the isolated view, so no other project's state is touched
+    final RegularFile latestLock = project.getIsolated().getRootProject().getProjectDirectory().dir(".gradle/bun").file("latest.lock");
+
+    // Resolve configured version with a safe default. "latest" is pinned to a concrete release through a
+    // ValueSource, so the install directory is named after the real version and only moves once the TTL passes
+    final Provider<String> latestVersion = project.getProviders().of(BunLatestVersionSource.class, spec -> {
+      spec.getParameters().getLockFile().set(latestLock);
+      spec.getParameters().getTtl().set(extension.getLatestTtl().orElse(BunLatestVersionSource.DEFAULT_TTL));
+      spec.getParameters().getDisableSslVerification().set(disableSslVerification);
+      spec.getParameters().getConnectTimeout().set(connectTimeout);
+      spec.getParameters().getReadTimeout().set(readTimeout);
+      spec.getParameters().getIdleTimeout().set(idleTimeout);
+      spec.getParameters().getRetryPolicy().set(retryPolicy);
+      spec.getParameters().getOffline().set(offline);
+    });
+
+    // Ranges such as "1.1.x" resolve against the release index in the shared cache, refreshed once the same TTL passes
+    final Function<String, Provider<String>> resolveVersion = v -> {
+      if (BunHelpers.LATEST.equals(v)) {
+        return latestVersion;
+      }
+      if (!BunVersionRange.isRange(v)) {
+        return project.getProviders().provider(() -> v);
+      }
+      return project.getProviders().of(BunVersionRangeSource.class, spec -> {
+        spec.getParameters().getRange().set(v);
+        spec.getParameters().getIndexFile().set(new File(BunDistributionCache.defaultRoot(project.getGradle().getGradleUserHomeDir()), "releases.properties"));
+        spec.getParameters().getTtl().set(extension.getLatestTtl().orElse(BunLatestVersionSource.DEFAULT_TTL));
+        spec.getParameters().getDisableSslVerification().set(disableSslVerification);
+        spec.getParameters().getConnectTimeout().set(connectTimeout);
+        spec.getParameters().getReadTimeout().set(readTimeout);
+        spec.getParameters().getIdleTimeout().set(idleTimeout);
+        spec.getParameters().getRetryPolicy().set(retryPolicy);
+        spec.getParameters().getOffline().set(offline);
+      });
+    };
+    final Provider<String> version = extension.getVersion().map(BunHelpers::normalizeVersion).orElse(BunHelpers.LATEST).flatMap(resolveVersion::apply);
+
+    // If enabled, a Bun already installed on this machine in the resolved version replaces the isolated installation,
+    // unless the system is set explicitly or forceBun is on (its node alias would be written next to the system Bun)
+    final Provider<String> systemBun = extension.getUseSystemBun().orElse(false).zip(extension.getForceBun().orElse(false), (use, force) -> use && !force && !extension.getSystem().isPresent()).flatMap(use -> {
+      if (!use) {
+        return project.getProviders().provider(() -> null);
+      }
+      return project.getProviders().of(BunDiscoverySource.class, spec -> {
+        spec.getParameters().getVersion().set(version);
+        spec.getParameters().getExeName().set(system.map(BunSystem::exeName));
+        spec.getParameters().getCacheFile().set(new File(BunDistributionCache.defaultRoot(project.getGradle().getGradleUserHomeDir()), "discovered.properties"));
+      });
+    });
+
+    // Resolve distribution sources, falling back to the official GitHub releases
+    final Provider<List<BunDistributionSource>> sources = extension.getSources().map(list -> list.isEmpty() ? List.of(BunDistributionSource.github()) : list).orElse(List.of(BunDistributionSource.github()));
+
+    // How distributions are fetched, shared by bunSetup and bunPrefetch; prefetching picks its own entries and digests
+    final Provider<BunInstallService.Settings> fetchSettings = project.getProviders().provider(() -> new BunInstallService.Settings(disableSslVerification.get(), downloadConnections.get(), streamingInstall.get(), connectTimeout.get(), readTimeout.get(), idleTimeout.get(), retryPolicy.get(), sources.get(), offline.get(), null, null, allowUnverified.get()));
+    final Provider<BunInstallService.Settings> installSettings = fetchSettings.map(settings -> settings.withExtract(extract.get()).withSha256(sha256.getOrNull()));
+
+    // One installer per build, so bunSetup in many subprojects downloads and extracts only once
+    final Provider<BunInstallService> installService = project.getGradle().getSharedServices().registerIfAbsent(BunInstallService.NAME, BunInstallService.class, spec -> {
+      spec.getParameters().getCacheDir().set(BunDistributionCache.defaultRoot(project.getGradle().getGradleUserHomeDir()));
+      spec.getParameters().getRetention().set(retentionPolicy);
     });
 
     /*
@@ -79,18 +186,42 @@ public class BunPlugin implements Plugin<Project> {
      * TODO: Consider modeling a single generic "bun" Exec task with command-line parameters instead of many tasks.
      */
     // --- bun setup ---
+    // Every project installs into its own directory, so the build cache can store and restore each task's output.
+    // The install service still downloads and extracts a distribution only once for all of them.
+    final Provider<BunSetupTask.Install> install = project.getProviders().provider(() -> systemBun.isPresent() ? null : new BunSetupTask.Install(version.get(), system.get(), installSettings.get()));
     project.getTasks().register("bunSetup", BunSetupTask.class, task -> {
       task.setGroup("bun");
-      task.setDescription("Downloads and installs the configured Bun runtime into .gradle/bun for this project.");
-      task.getVersion().set(version);
-      task.getSystem().set(system);
-      task.getDisableSslVerification().set(disableSslVerification);
+      task.setDescription("Downloads and installs the configured Bun runtime into .gradle/bun of this project.");
       task.getBunRootDir().set(bunRoot);
+      task.getInstall().set(install);
+      task.getInstallService().set(installService);
+      task.usesService(installService);
+      task.onlyIf("the project needs an isolated Bun installation", t -> task.getInstall().isPresent());
+    });
+
+    // --- bun prefetch ---
+    project.getTasks().register("bunPrefetch", BunPrefetchTask.class, task -> {
+      task.setGroup("bun");
+      task.setDescription("Downloads and verifies several Bun versions/systems into the shared distribution cache, e.g. for CI images.");
+      task.getVersions().convention(extension.getVersion().map(BunHelpers::normalizeVersion).orElse(BunHelpers.LATEST).map(Set::of));
+      task.getSystems().convention(system.map(Set::of));
+      task.getParallelism().convention(BunPrefetchTask.DEFAULT_PARALLELISM);
+      task.getResolvedVersions().set(task.getVersions().flatMap(requested -> {
+        Provider<List<String>> resolved = project.getProviders().provider(List::of);
+        for (String v : requested) {
+          resolved = resolved.zip(resolveVersion.apply(BunHelpers.normalizeVersion(v)), (list, r) -> Stream.concat(list.stream(), Stream.of(r)).toList());
+        }
+        return resolved;
+      }));
+      task.getExtract().set(explicitExtract);
+      task.getSettings().set(fetchSettings);
+      task.getInstallService().set(installService);
+      task.usesService(installService);
     });
 
     // --- bun install ---
     project.getTasks().register("bunInstall", BunTask.class, task -> {
-      configureBaseTask(task, project, bunExeProvider, bunRoot, version, system);
+      configureBaseTask(task, project, bunRoot, version, system, systemBun);
       task.setDescription("Installs dependencies using Bun (runs 'bun install' in the project directory).");
 
       task.args("install");
@@ -98,7 +229,7 @@ public class BunPlugin implements Plugin<Project> {
 
     // --- bun build ---
     project.getTasks().register("bunBuild", BunTask.class, task -> {
-      configureBaseTask(task, project, bunExeProvider, bunRoot, version, system);
+      configureBaseTask(task, project, bunRoot, version, system, systemBun);
       task.setDescription("Builds project using Bun (runs 'bun run build' in the project directory).");
       task.dependsOn("bunInstall");
 
@@ -107,7 +238,7 @@ public class BunPlugin implements Plugin<Project> {
 
     // --- bun test ---
     project.getTasks().register("bunTest", BunTask.class, task -> {
-      configureBaseTask(task, project, bunExeProvider, bunRoot, version, system);
+      configureBaseTask(task, project, bunRoot, version, system, systemBun);
       task.setDescription("Runs tests using Bun (runs 'bun test' in the project directory).");
 
       task.args("test");
@@ -115,7 +246,7 @@ public class BunPlugin implements Plugin<Project> {
 
     // --- bun run <script> ---
     project.getTasks().register("bunRun", BunTask.class, task -> {
-      configureBaseTask(task, project, bunExeProvider, bunRoot, version, system);
+      configureBaseTask(task, project, bunRoot, version, system, systemBun);
       task.setDescription("Runs a package.json script using Bun (requires -PbunScript=<name>).");
 
       Provider<String> script = project.getProviders().gradleProperty("bunScript");
@@ -127,7 +258,7 @@ public class BunPlugin implements Plugin<Project> {
 
     // --- bun add <package> ---
     project.getTasks().register("bunInstallPkg", BunTask.class, task -> {
-      configureBaseTask(task, project, bunExeProvider, bunRoot, version, system);
+      configureBaseTask(task, project, bunRoot, version, system, systemBun);
       task.setDescription("Installs a package using Bun (runs 'bun add <package>' and requires -PbunPkg=<name>).");
 
       Provider<String> pkg = project.getProviders().gradleProperty("bunPkg");
@@ -138,16 +269,18 @@ public class BunPlugin implements Plugin<Project> {
     });
   }
 
-  private void configureBaseTask(BunTask task, Project project, Provider<File> exe, Directory root, Provider<String> v, Provider<BunSystem> s) {
+  private void configureBaseTask(BunTask task, Project project, Directory root, Provider<String> v, Provider<BunSystem> s, Provider<String> systemBun) {
     BunExtension ext = project.getExtensions().getByType(BunExtension.class);
 
+    // The executable is resolved by the task when it runs, so configuration never touches the Bun root;
+    // only a Bun found on this machine is known up front
     task.setGroup("bun");
     task.dependsOn("bunSetup");
-    task.getBunExecutableProperty().set(project.getLayout().getProjectDirectory().file(exe.map(File::getAbsolutePath)));
     task.getBunRootDir().set(root);
     task.getForceBun().convention(ext.getForceBun().orElse(false));
     task.getSystem().set(s);
     task.getVersion().set(v);
+    task.getBunExecutableProperty().set(project.getLayout().file(systemBun.map(File::new)));
     task.getWorkingDirProperty().convention(ext.getWorkingDir().orElse(project.getLayout().getProjectDirectory()));
   }
 }
@@ -0,0 +1,177 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// Gradle task that fills the shared [BunDistributionCache] with several Bun distributions at once.
+///
+/// Every combination of [#getVersions()] and [#getSystems()] is fetched and verified exactly as
+/// `bunSetup` would, but nothing is installed into a project. This is meant for baking CI or
+/// container images, so later builds on any of the platforms find Bun in the cache:
+/// ```
+/// tasks.named("bunPrefetch") {
+///   versions = ["1.1.0", "1.2.x", "latest"]
+///   systems = [BunSystem.LINUX_X64, BunSystem.LINUX_AARCH64, BunSystem.LINUX_X64_MUSL]
+///   parallelism = 4
+/// }
+/// ```
+/// Up to [#getParallelism()] distributions are fetched concurrently. Failures do not stop the
+/// others; they are reported together once everything else has finished.
+///
+/// The task declares no outputs and always runs; distributions already in the cache cost no
+/// network and are reported as cache hits.
+public abstract class BunPrefetchTask extends DefaultTask {
+  /// Default number of distributions fetched concurrently.
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  /// Fetches every version/system combination into the shared cache.
+  ///
+  /// @throws GradleException if any distribution could not be fetched or verified
+  @TaskAction
+  public void run() {
+    final Set<String> versions = new LinkedHashSet<>(getResolvedVersions().get());
+
+    final List<Item> items = new ArrayList<>();
+    for (String version : versions) {
+      for (BunSystem system : getSystems().get()) {
+        items.add(new Item(version, system));
+      }
+    }
+    if (items.isEmpty()) {
+      getLogger().lifecycle("Nothing to prefetch: no Bun versions or systems configured");
+      return;
+    }
+
+    final BunInstallService service = getInstallService().get();
+    final BunInstallService.Settings settings = getSettings().get();
+    final long start = System.nanoTime();
+
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(getParallelism().get(), items.size())));
+    final List<Future<BunInstallService.Fetched>> futures = new ArrayList<>();
+    try {
+      for (Item item : items) {
+        final BunExtractionManifest manifest = getExtract().getOrElse(BunExtractionManifest.forSystem(item.system));
+        futures.add(pool.submit(() -> service.prefetch(item.version, item.system, settings.withExtract(manifest))));
+      }
+
+      long bytes = 0;
+      int downloaded = 0;
+      int hits = 0;
+      final List<String> failures = new ArrayList<>();
+
+      for (int i = 0; i < items.size(); i++) {
+        final Item item = items.get(i);
+        try {
+          final BunInstallService.Fetched fetched = futures.get(i).get();
+          if (fetched.cached()) {
+            hits++;
+          } else {
+            downloaded++;
+            bytes += fetched.bytes();
+          }
+          getLogger().info("Prefetched {}: {}", item, fetched.cached() ? "cache hit" : mib(fetched.bytes()) + " downloaded");
+        } catch (ExecutionException e) {
+          failures.add(item + ": " + e.getCause().getMessage());
+        }
+      }
+
+      getLogger().lifecycle("Prefetched {} Bun distribution{} in {}: {} downloaded ({}), {} cache hit{}{}", items.size() - failures.size(), items.size() == 1 ? "" : "s", String.format(Locale.ROOT, "%.2f s", (System.nanoTime() - start) / 1e9), downloaded, mib(bytes), hits, hits == 1 ? "" : "s", failures.isEmpty() ? "" : ", " + failures.size() + " failed");
+
+      if (!failures.isEmpty()) {
+        throw new GradleException("Could not prefetch " + failures.size() + " of " + items.size() + " Bun distributions:\n  " + String.join("\n  ", failures));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GradleException("Interrupted while prefetching Bun distributions", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /// The Bun versions to fetch.
+  ///
+  /// Entries may be explicit versions (e.g. `"1.1.0"`), ranges (e.g. `"1.1.x"`) or `"latest"`, which
+  /// resolve to the same release `bunSetup` would use. Defaults to the version configured on the `bun` extension.
+  ///
+  /// @return a property representing the versions to fetch
+  @Input
+  public abstract SetProperty<String> getVersions();
+
+  /// The system/platform variants to fetch for every version.
+  ///
+  /// Defaults to the system configured on (or detected by) the `bun` extension.
+  ///
+  /// @return a property representing the systems to fetch
+  @Input
+  public abstract SetProperty<BunSystem> getSystems();
+
+  /// Which entries of the Bun archives are extracted into the cache.
+  ///
+  /// Set by the plugin only when `extract` is configured on the `bun` extension. Otherwise each
+  /// distribution is extracted with the default of its own system ([BunExtractionManifest#forSystem(BunSystem)]),
+  /// so it matches the cache entry `bunSetup` looks up on that system.
+  ///
+  /// @return a property representing the extraction manifest for every system
+  @Input
+  @Optional
+  public abstract Property<BunExtractionManifest> getExtract();
+
+  /// Maximum number of distributions fetched concurrently.
+  ///
+  /// Each distribution may itself use several download connections. Defaults to [#DEFAULT_PARALLELISM].
+  ///
+  /// @return a property representing the number of concurrent fetches
+  @Internal
+  public abstract Property<Integer> getParallelism();
+
+  /// The concrete releases [#getVersions()] resolve to, in the same order.
+  ///
+  /// The plugin resolves them exactly as for `bunSetup`: `"latest"` to the pinned release and ranges
+  /// against the cached release index (see [BunVersionRangeSource]).
+  ///
+  /// @return a property representing the resolved versions
+  @Internal
+  public abstract ListProperty<String> getResolvedVersions();
+
+  /// How distributions are fetched: sources, timeouts, retries and offline mode.
+  ///
+  /// The extraction manifest of these settings is replaced per distribution (see [#getExtract()]).
+  ///
+  /// @return a property representing the fetch settings
+  @Internal
+  public abstract Property<BunInstallService.Settings> getSettings();
+
+  /// The shared service performing the downloads.
+  ///
+  /// @return a property holding the build-wide [BunInstallService]
+  @Internal
+  public abstract Property<BunInstallService> getInstallService();
+
+  private static String mib(final long bytes) {
+    return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024.0));
+  }
+
+  private record Item(String version, BunSystem system) {
+    @Override
+    public String toString() {
+      return "Bun " + version + " (" + system.zipName() + ")";
+    }
+  }
+}
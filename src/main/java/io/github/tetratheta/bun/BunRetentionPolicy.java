@@ -0,0 +1,42 @@
+package io.github.tetratheta.bun;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/// Which Bun installations and cached distributions are kept when unused ones are cleaned up.
+///
+/// Installations under a Bun root directory and entries of the [BunDistributionCache] are each
+/// treated as a least-recently-used set. Starting from the most recently used, an installation
+/// or entry is kept while all of these hold:
+///   - it was used within `maxUnused`;
+///   - its version is one of the `maxVersions` most recently used versions;
+///   - it and everything kept before it fit into `maxBytes`.
+///
+/// Anything used by the current build is always kept. See [BunCleanup] for when the policy is applied.
+///
+/// @param maxUnused   how long an installation or distribution may go unused
+/// @param maxVersions how many distinct versions are kept at most
+/// @param maxBytes    how many bytes are kept at most
+public record BunRetentionPolicy(Duration maxUnused, int maxVersions, long maxBytes) implements Serializable {
+  /// Default time an installation or distribution may go unused, the same as Gradle's own caches.
+  public static final Duration DEFAULT_MAX_UNUSED = Duration.ofDays(30);
+
+  /// Default number of versions kept: unlimited.
+  public static final int DEFAULT_MAX_VERSIONS = Integer.MAX_VALUE;
+
+  /// Default number of bytes kept: unlimited.
+  public static final long DEFAULT_MAX_BYTES = Long.MAX_VALUE;
+
+  /// Validates the policy.
+  public BunRetentionPolicy {
+    if (maxUnused.isNegative()) {
+      throw new IllegalArgumentException("maxUnused must not be negative: " + maxUnused);
+    }
+    if (maxVersions < 1) {
+      throw new IllegalArgumentException("maxVersions must be at least 1: " + maxVersions);
+    }
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+    }
+  }
+}
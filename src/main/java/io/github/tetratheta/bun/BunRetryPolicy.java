@@ -0,0 +1,243 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// How network operations of the plugin are retried.
+///
+/// A failed attempt is retried after a jittered exponential backoff: the `n`-th retry waits a
+/// random time between half and all of `initialBackoff * 2^(n-1)`, capped at `maxBackoff`.
+/// Only transient failures are retried — connection errors, timeouts, stalled transfers and
+/// HTTP `408`, `429` and `5xx` answers. Missing files and other HTTP errors fail immediately.
+///
+/// All attempts of one installation share a single [Budget] that ends at `deadline`; no attempt
+/// is started, and no running range download continues, once it has passed.
+///
+/// @param maxAttempts    the maximum number of attempts per operation (at least 1)
+/// @param initialBackoff the wait before the first retry
+/// @param maxBackoff     the upper bound of any single wait
+/// @param deadline       the total time allowed for all attempts of an installation
+public record BunRetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration deadline) implements Serializable {
+  /// Default number of attempts per operation.
+  public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+  /// Default wait before the first retry.
+  public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+  /// Default upper bound of any single wait.
+  public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(30);
+
+  /// Default total time allowed for an installation.
+  public static final Duration DEFAULT_DEADLINE = Duration.ofMinutes(15);
+
+  private static final Logger LOGGER = Logging.getLogger(BunRetryPolicy.class);
+
+  /// Validates the policy.
+  public BunRetryPolicy {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+    }
+  }
+
+  /// Starts the clock for a group of operations sharing this policy's deadline.
+  ///
+  /// @return a budget ending `deadline` from now
+  public Budget begin() {
+    return new Budget(this, System.nanoTime() + deadline.toNanos());
+  }
+
+  /// Returns the wait before retrying after the given failed attempt.
+  ///
+  /// @param attempt the number of the attempt that failed, starting at 1
+  /// @return a random wait between half and all of the capped exponential backoff
+  public Duration backoff(final int attempt) {
+    final long cap = maxBackoff.toMillis();
+    final long base = Math.min(cap, initialBackoff.toMillis() << Math.min(attempt - 1, 30));
+    final long half = Math.max(0, base / 2);
+    return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(base - half + 1));
+  }
+
+  /// Returns whether a failure is worth another attempt.
+  ///
+  /// @param failure the failure of an attempt
+  /// @return `true` for transient failures
+  public static boolean isRetryable(final IOException failure) {
+    if (failure instanceof BunHttpTransport.HttpStatusException status) {
+      final int code = status.statusCode();
+      return code == 408 || code == 429 || code >= 500;
+    }
+    if (failure instanceof DeadlineExceededException) {
+      return false;
+    }
+    // An interrupt surfaces as InterruptedIOException, but timeouts do too
+    if (failure instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+      return false;
+    }
+    return !(failure instanceof NoSuchFileException || failure instanceof FileNotFoundException);
+  }
+
+  /// An operation that may be attempted several times.
+  ///
+  /// @param <T> the result type
+  @FunctionalInterface
+  public interface Action<T> {
+    /// Runs one attempt.
+    ///
+    /// @param attempt the attempt, used to report transferred bytes
+    /// @return the result
+    /// @throws IOException if the attempt fails
+    T run(Attempt attempt) throws IOException;
+  }
+
+  /// One attempt of an operation, tracking how much it transferred.
+  public static final class Attempt {
+    private final int number;
+    private final long started = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+
+    Attempt(final int number) {
+      this.number = number;
+    }
+
+    /// Returns the number of this attempt, starting at 1.
+    ///
+    /// @return the attempt number
+    public int number() {
+      return number;
+    }
+
+    /// Records bytes received by this attempt.
+    ///
+    /// @param count the number of bytes
+    public void transferred(final long count) {
+      bytes.addAndGet(count);
+    }
+
+    /// Returns the number of bytes received by this attempt so far.
+    ///
+    /// @return the transferred byte count
+    public long bytes() {
+      return bytes.get();
+    }
+
+    /// Wraps `in` so every byte read is recorded by this attempt.
+    ///
+    /// @param in the stream to count
+    /// @return a stream reading from `in`
+    public InputStream counting(final InputStream in) {
+      return new FilterInputStream(in) {
+        @Override
+        public int read() throws IOException {
+          final int b = super.read();
+          if (b >= 0) {
+            transferred(1);
+          }
+          return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+          final int n = super.read(b, off, len);
+          if (n > 0) {
+            transferred(n);
+          }
+          return n;
+        }
+      };
+    }
+
+    String describe() {
+      final long nanos = Math.max(1, System.nanoTime() - started);
+      final double mib = bytes.get() / (1024.0 * 1024.0);
+      return String.format(Locale.ROOT, "%.1f MiB in %.2f s (%.1f MiB/s)", mib, nanos / 1e9, mib / (nanos / 1e9));
+    }
+  }
+
+  /// The shared deadline of a group of operations.
+  public static final class Budget {
+    private final BunRetryPolicy policy;
+    private final long deadlineNanos;
+
+    private Budget(final BunRetryPolicy policy, final long deadlineNanos) {
+      this.policy = policy;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    /// Runs `action`, retrying transient failures with backoff until it succeeds, the attempts
+    /// are used up or the deadline passes.
+    ///
+    /// @param operation a short description used in log messages
+    /// @param action    the operation to attempt
+    /// @param <T>       the result type
+    /// @return the result of the first successful attempt
+    /// @throws IOException the failure of the last attempt
+    public <T> T call(final String operation, final Action<T> action) throws IOException {
+      for (int number = 1; ; number++) {
+        checkDeadline(operation);
+        final Attempt attempt = new Attempt(number);
+
+        try {
+          final T result = action.run(attempt);
+          if (number > 1) {
+            LOGGER.lifecycle("{} succeeded on attempt {}: {}", operation, number, attempt.describe());
+          } else {
+            LOGGER.info("{}: {}", operation, attempt.describe());
+          }
+          return result;
+        } catch (IOException e) {
+          if (!isRetryable(e) || number >= policy.maxAttempts) {
+            throw e;
+          }
+
+          final Duration wait = policy.backoff(number);
+          if (System.nanoTime() + wait.toNanos() - deadlineNanos > 0) {
+            throw e;
+          }
+
+          LOGGER.warn("{} failed on attempt {}/{} after {}: {}; retrying in {} ms", operation, number, policy.maxAttempts, attempt.describe(), e.getMessage(), wait.toMillis());
+          sleep(wait);
+        }
+      }
+    }
+
+    /// Fails if the deadline has passed.
+    ///
+    /// @param operation a short description used in the error message
+    /// @throws DeadlineExceededException if the deadline has passed
+    public void checkDeadline(final String operation) throws DeadlineExceededException {
+      if (System.nanoTime() - deadlineNanos > 0) {
+        throw new DeadlineExceededException(operation + " did not finish within " + policy.deadline.toSeconds() + " s");
+      }
+    }
+
+    private static void sleep(final Duration wait) throws IOException {
+      try {
+        Thread.sleep(wait.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting to retry");
+      }
+    }
+  }
+
+  /// Thrown when an operation runs past the deadline of its [Budget]; never retried.
+  public static final class DeadlineExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    DeadlineExceededException(final String message) {
+      super(message);
+    }
+  }
+}
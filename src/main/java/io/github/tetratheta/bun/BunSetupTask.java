@@ -3,49 +3,61 @@ package io.github.tetratheta.bun;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.nio.file.Files;
-import java.util.Optional;
+import java.io.Serializable;
 
 /// Gradle task responsible for downloading and verifying the Bun runtime
-/// into a project-local directory.
+/// into a build-local directory.
 ///
-/// The Bun distribution is downloaded as a zip file from the official GitHub releases,
-/// verified using a published SHA-256 checksum, and extracted under:
+/// The Bun distribution is downloaded as a zip file from the configured [BunDistributionSource]s
+/// (the official GitHub releases by default), verified using a published SHA-256 checksum, and
+/// extracted once per machine into the shared [BunDistributionCache]. The installation is a linked mirror of that entry under the
+/// project:
 /// ```
 /// <project>/.gradle/bun/<version>/<platform>/
 /// ```
+/// Every project applying the plugin has its own `bunSetup` and installation directory, so no task
+/// reaches into another project and each output can be cached on its own. The task is skipped when the
+/// project enables [BunExtension#getUseSystemBun()] and a Bun in its resolved version is already installed
+/// on this machine (see [BunDiscoverySource]).
 ///
 /// This task is designed to be:
 ///   - **Idempotent** — if Bun is already in place, no work is performed.
 ///   - **Reproducible** — the exact version and platform are controlled via task inputs.
-///   - **Isolated** — Portable installation does not affect any global/system Bun installation.
+///   - **Isolated** — Portable installation does not affect any global/system Bun installation, and none is
+///     used unless [BunExtension#getUseSystemBun()] is enabled.
+///   - **Cacheable** — the installation directories are stored in the Gradle build cache, so a fresh
+///     machine can restore Bun from a (remote) build cache instead of downloading it. A restored
+///     installation is checked against its `install.json` before it is used (see [BunInstallation]).
 ///
 /// ## Inputs
-///   - [#getVersion()] — the Bun version to install (or `"latest"`).
-///   - [#getSystem()] — the target system/platform for the Bun distribution.
+///   - [#getInstall()] — the version, system, extracted files and pinned digest of the installation.
 ///
 /// ## Outputs
-///   - [#getBunRootDir()] — the root directory containing all Bun installations.
+///   - [#getInstallDir()] — the directory of the requested version/system combination only.
+///     Other versions under the same root are not fingerprinted, so an up-to-date check costs the
+///     same no matter how many versions have been installed.
 ///
 /// Other Bun-related tasks should declare a dependency on this task to ensure
 /// Bun is available before execution.
+@CacheableTask
 public abstract class BunSetupTask extends DefaultTask {
   /// Executes the Bun setup process.
   ///
-  /// The task performs the following steps:
-  ///   - Resolves and normalizes the configured version and system.
-  ///   - Determines the installation and zip file locations.
-  ///   - Downloads the Bun zip if it does not already exist.
-  ///   - Verifies the zip integrity using a SHA-256 checksum.
-  ///   - Extracts the zip if Bun is not already installed.
-  ///   - Ensures the Bun executable is available and usable.
+  /// The work is delegated to the shared [BunInstallService], which:
+  ///   - Returns immediately when the installation was already done earlier in this build.
+  ///   - Looks up the version/system combination in the shared [BunDistributionCache].
+  ///   - On a cache miss, downloads the Bun zip, verifies it and extracts it into the cache.
+  ///   - Links the cached distribution into the Bun root directory.
   ///
   /// If the Bun executable is already present, the task exits early without
   /// performing any additional work.
@@ -53,132 +65,139 @@ public abstract class BunSetupTask extends DefaultTask {
   /// @throws IOException if installation or verification fails
   @TaskAction
   public void run() throws IOException {
-    final String version = BunHelpers.normalizeVersion(getVersion().getOrNull());
-    final BunSystem system = getSystem().get();
-    final File bunRoot = getBunRootDir().get().getAsFile();
-    final File installDir = new File(bunRoot, version);
+    final Install install = getInstall().get();
 
-    final Optional<File> bunExe = BunHelpers.findBunExecutable(installDir, system.exeName());
-
-    // Executable is present, no additional steps needed
-    if (bunExe.isPresent()) {
-      getLogger().lifecycle("Bun already installed: {}", bunExe.get().getAbsolutePath());
-      return;
-    }
-
-    final File zipFile = this.getZipFile(installDir, system, version, getDisableSslVerification().get());
-
-    getLogger().lifecycle("Extracting {} -> {}", zipFile.getName(), installDir.getAbsolutePath());
-    BunHelpers.unzip(zipFile, installDir);
-    Files.deleteIfExists(zipFile.toPath());
-
-    final File executable = BunHelpers.findBunExecutable(installDir, system.exeName()).orElseThrow(() -> new IllegalStateException("Failed to locate " + system.exeName() + " after extraction under: " + installDir));
-
-    if ("bun".equals(system.exeName())) {
-      // Best-effort attempt to ensure executability on Unix-like systems.
-      // TODO: Replace with an explicit chmod +x implementation if needed.
-      //noinspection ResultOfMethodCallIgnored
-      executable.setExecutable(true);
-    }
-
-    getLogger().lifecycle("Bun ready: {}", executable.getAbsolutePath());
+    getInstallService().get().install(getBunRootDir().get().getAsFile(), install.getVersion(), install.getSystem(), install.getSettings());
   }
 
-  /// The Bun version to install.
+  /// The installation this project needs.
   ///
-  /// May be an explicit version string (e.g. `"1.1.0"`) or `"latest"`.
-  /// The value is normalized at execution time.
+  /// Absent when the project uses a Bun already installed on this machine, in which case the task is skipped.
   ///
-  /// @return a property representing the Bun version
-  @Input
-  public abstract Property<String> getVersion();
-
-  /// The system/platform variant of Bun to install.
-  ///
-  /// This determines which release asset is downloaded (operating system and CPU architecture).
-  ///
-  /// @return a property representing the target [BunSystem]
-  @Input
-  public abstract Property<BunSystem> getSystem();
-
-  /// Whether to disable SSL certificate verification during downloads.
-  ///
-  /// Useful in corporate environments with SSL-intercepting proxies.
-  ///
-  /// @return a property representing whether SSL verification is disabled
-  @Input
-  public abstract Property<Boolean> getDisableSslVerification();
+  /// @return a property holding the requested installation
+  @Nested
+  @Optional
+  public abstract Property<Install> getInstall();
 
   /// Root directory where Bun installations are stored.
   ///
   /// Each installed version/system combination will be placed under a subdirectory
-  /// of this location.
+  /// of this location. The plugin points it at `.gradle/bun` of the project.
+  ///
+  /// Only [#getInstallDir()] is declared as output, since the root holds every version ever installed.
   ///
   /// @return a directory property pointing to the Bun root directory
-  @OutputDirectory
+  @Internal
   public abstract DirectoryProperty getBunRootDir();
 
-  /// Resolves the Bun zip file for the given version and system.
+  /// Directory the requested version/system combination is installed into.
   ///
-  /// This method:
-  ///   - Ensures the installation directory exists.
-  ///   - Downloads the zip file if it is not already present.
-  ///   - Verifies the integrity of the downloaded zip.
+  /// It is derived from the root, version and system:
+  /// ```
+  /// <bunRoot>/<version>/<platform>/
+  /// ```
   ///
-  /// @param installDir             the directory where Bun will be installed
-  /// @param system                 the target system/platform
-  /// @param version                the Bun version
-  /// @param disableSslVerification whether to disable SSL verification
-  /// @return the verified Bun zip file
-  /// @throws IOException if the zip cannot be downloaded or written
-  private File getZipFile(final File installDir, final BunSystem system, final String version, final boolean disableSslVerification) throws IOException {
-    Files.createDirectories(installDir.toPath());
-
-    final File zipFile = new File(installDir, system.zipName());
-    final URI downloadUrl = BunHelpers.bunZipUrl(version, system);
-
-    // If the zip does not exist already, download it
-    if (!zipFile.exists()) {
-      getLogger().lifecycle("Downloading Bun: {} -> {}", downloadUrl, zipFile.getAbsolutePath());
-      BunHelpers.downloadUrlTo(downloadUrl.toURL(), zipFile, disableSslVerification);
-    } else {
-      getLogger().lifecycle("Bun zip already present: {}", zipFile.getAbsolutePath());
+  /// @return the installation directory, or `null` when nothing is installed
+  @OutputDirectory
+  @Optional
+  public File getInstallDir() {
+    if (!getInstall().isPresent()) {
+      return null;
     }
-
-    this.verifyIntegrity(zipFile, system, version);
-    return zipFile;
+    final Install install = getInstall().get();
+    return BunInstallation.platformDir(getBunRootDir().get().getAsFile(), install.getVersion(), install.getSystem());
   }
 
-  /// Verifies the integrity of a downloaded Bun zip file using SHA-256.
+  /// The shared service performing the installation.
   ///
-  /// The expected hash is fetched from the upstream release metadata and compared
-  /// against the locally computed hash. If verification fails, the corrupted zip
-  /// is deleted and the build fails.
+  /// @return a property holding the build-wide [BunInstallService]
+  @Internal
+  public abstract Property<BunInstallService> getInstallService();
+
+  /// One version/system combination a project needs installed.
   ///
-  /// @param zipFile the downloaded zip file
-  /// @param system  the target system/platform
-  /// @param version the Bun version
-  /// @throws IllegalStateException if verification fails or the hash cannot be computed
-  private void verifyIntegrity(final File zipFile, final BunSystem system, final String version) {
-    //     TODO This is borked
-    //    try {
-    //      final String expectedSha = BunHelpers.fetchExpectedSha256(version, system.zipName());
-    //      final String actualSha = BunHelpers.sha256(zipFile);
-    //
-    //      if (!actualSha.equalsIgnoreCase(expectedSha)) {
-    //        Files.delete(zipFile.toPath());
-    //
-    //        throw new IllegalStateException(
-    //            "SHA-256 mismatch for " + system.zipName() +
-    //                "\nExpected: " + expectedSha +
-    //                "\nActual:   " + actualSha +
-    //                "\nDeleted corrupted download."
-    //        );
-    //      }
-    //    } catch (IOException | NoSuchAlgorithmException e) {
-    //      throw new IllegalStateException(
-    //          "Failed to verify integrity of " + zipFile.getAbsolutePath(), e
-    //      );
-    //    }
+  /// Only what decides the installed files is an input; how the distribution is fetched is not.
+  public static final class Install implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String version;
+    private final BunSystem system;
+    private final BunInstallService.Settings settings;
+
+    /// Creates an installation request.
+    ///
+    /// @param version  the resolved Bun version, e.g. `"1.1.0"`
+    /// @param system   the target system/platform
+    /// @param settings how the distribution is fetched and what is extracted from it
+    public Install(final String version, final BunSystem system, final BunInstallService.Settings settings) {
+      this.version = BunHelpers.normalizeVersion(version);
+      this.system = system;
+      this.settings = settings;
+    }
+
+    /// The Bun version to install.
+    ///
+    /// The plugin resolves `"latest"` and version ranges to a concrete release (see [BunLatestVersionSource]
+    /// and [BunVersionRangeSource]) before requesting it, so the installation directory and up-to-date checks
+    /// are tied to the actual version.
+    ///
+    /// @return the normalized Bun version
+    @Input
+    public String getVersion() {
+      return version;
+    }
+
+    /// The system/platform variant of Bun to install.
+    ///
+    /// This determines which release asset is downloaded (operating system and CPU architecture).
+    ///
+    /// @return the target [BunSystem]
+    @Input
+    public BunSystem getSystem() {
+      return system;
+    }
+
+    /// Which entries of the Bun archive are extracted.
+    ///
+    /// This decides which files end up in the installation, so it is an input.
+    ///
+    /// @return the extraction manifest
+    @Input
+    public BunExtractionManifest getExtract() {
+      return settings.extract();
+    }
+
+    /// Expected SHA-256 of the distribution archive.
+    ///
+    /// When present, it replaces the published checksum for verification. Pinning it also keys the
+    /// build cache entry to the exact archive rather than to the version name alone.
+    ///
+    /// @return the expected archive digest, or `null` to use the published checksum
+    @Input
+    @Optional
+    public String getSha256() {
+      return settings.sha256();
+    }
+
+    /// Whether SSL certificate verification is disabled during downloads.
+    ///
+    /// Like the other fetch settings, this does not change the verified files that are installed.
+    ///
+    /// @return whether SSL verification is disabled
+    @Internal
+    public boolean getDisableSslVerification() {
+      return settings.disableSslVerification();
+    }
+
+    /// How the distribution is fetched when it is not cached yet.
+    ///
+    /// Connections, timeouts, retries and sources only affect how fast and from where the verified
+    /// files are fetched, not what is installed.
+    ///
+    /// @return the installation settings
+    @Internal
+    public BunInstallService.Settings getSettings() {
+      return settings;
+    }
   }
 }
@@ -16,7 +16,8 @@ import java.util.Locale;
 ///
 /// ## Platform Variants
 /// Some platforms provide multiple builds (e.g. baseline vs non-baseline, glibc vs musl).
-/// Only a subset is automatically detected; others may be selected explicitly by users
+/// On Linux the fastest build that runs on the host is detected (see [#detect(BunHostProbe)]);
+/// elsewhere the optimized build is detected, and others may be selected explicitly by users
 /// via the `bun{system = ...}` configuration.
 public enum BunSystem {
 
@@ -50,6 +51,8 @@ public enum BunSystem {
   /// Linux ARM64 build targeting musl.
   LINUX_AARCH64_MUSL("bun-linux-aarch64-musl.zip", "bun");
 
+  private static volatile BunSystem detected;
+
   private final String exeName;
   private final String zipName;
 
@@ -61,19 +64,37 @@ public enum BunSystem {
   /// Detects the current operating system and CPU architecture and selects
   /// the most appropriate [BunSystem].
   ///
-  /// Detection is based on the standard JVM system properties:
-  ///   - `os.name`
-  ///   - `os.arch`
-  ///
-  /// Only the most common system combinations are auto-detected. More specialized
-  /// variants (such as musl or baseline builds) must be selected explicitly by
-  /// configuring the plugin.
+  /// The host is probed once per JVM (so once per Gradle daemon), see [#detect(BunHostProbe)].
   ///
   /// @return the detected [BunSystem]
   /// @throws IllegalStateException if the current OS/architecture combination is not supported by this plugin
   public static BunSystem detect() {
-    final String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
-    final String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+    BunSystem system = detected;
+    if (system == null) {
+      system = detect(BunHostProbe.current());
+      detected = system;
+    }
+    return system;
+  }
+
+  /// Selects the fastest [BunSystem] that runs on a host.
+  ///
+  /// Detection is based on:
+  ///   - the `os.name` and `os.arch` JVM system properties;
+  ///   - on Linux, the C library the JVM itself is linked against (from `/proc/self/maps`), so
+  ///     Alpine and other musl distributions get a musl build;
+  ///   - on Linux x64, the CPU flags in `/proc/cpuinfo`: the optimized build needs AVX2, so the
+  ///     baseline build is chosen without it, and also when the flags cannot be read.
+  ///
+  /// Windows and macOS always get their optimized builds, as the JVM offers no portable way to
+  /// read the CPU flags there. Select a baseline build explicitly via `bun{system = ...}` if needed.
+  ///
+  /// @param probe access to the host
+  /// @return the selected [BunSystem]
+  /// @throws IllegalStateException if the OS/architecture combination is not supported by this plugin
+  public static BunSystem detect(final BunHostProbe probe) {
+    final String os = probe.property("os.name").toLowerCase(Locale.ROOT);
+    final String arch = probe.property("os.arch").toLowerCase(Locale.ROOT);
 
     boolean isArm64 = arch.contains("aarch64") || arch.contains("arm64");
     boolean isX64 = arch.contains("x86_64") || arch.contains("amd64");
@@ -81,12 +102,26 @@ public enum BunSystem {
     if (os.contains("win") && isX64) return WINDOWS_X64;
     if (os.contains("mac") && isArm64) return DARWIN_AARCH64;
     if (os.contains("mac") && isX64) return DARWIN_X64;
-    if (os.contains("linux") && isArm64) return LINUX_AARCH64;
-    if (os.contains("linux") && isX64) return LINUX_X64;
+    if (os.contains("linux") && isArm64) return isMusl(probe) ? LINUX_AARCH64_MUSL : LINUX_AARCH64;
+    if (os.contains("linux") && isX64) {
+      final boolean avx2 = hasAvx2(probe);
+      if (isMusl(probe)) return avx2 ? LINUX_X64_MUSL : LINUX_X64_MUSL_BASELINE;
+      return avx2 ? LINUX_X64 : LINUX_X64_BASELINE;
+    }
 
     throw new IllegalStateException("Unsupported OS/arch: os=" + os + " arch=" + arch);
   }
 
+  /// Whether the JVM runs on musl rather than glibc. Alpine's marker file covers hosts without `/proc`.
+  private static boolean isMusl(final BunHostProbe probe) {
+    return probe.findLine("/proc/self/maps", line -> line.contains("/ld-musl-") || line.contains("/libc.musl-")).isPresent() || probe.findLine("/etc/alpine-release", line -> true).isPresent();
+  }
+
+  /// Whether the first CPU lists AVX2; unreadable flags count as missing.
+  private static boolean hasAvx2(final BunHostProbe probe) {
+    return probe.findLine("/proc/cpuinfo", line -> line.startsWith("flags")).map(line -> (" " + line.substring(line.indexOf(':') + 1) + " ").contains(" avx2 ")).orElse(false);
+  }
+
   /// Returns the expected name of the Bun executable for this system.
   ///
   /// @return the executable file name (e.g. `bun` or `bun.exe`)
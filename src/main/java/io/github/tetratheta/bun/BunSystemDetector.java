@@ -3,12 +3,14 @@ package io.github.tetratheta.bun;
 import org.gradle.api.provider.ValueSource;
 import org.gradle.api.provider.ValueSourceParameters;
 
-/// [ValueSource] that detects the current [BunSystem] by reading JVM system properties.
+/// [ValueSource] that detects the current [BunSystem] from JVM system properties and, on Linux,
+/// the C library and CPU flags of the host (see [BunSystem#detect(BunHostProbe)]).
 ///
 /// Using a [ValueSource] (rather than calling [System#getProperty] directly during the
 /// configuration phase) makes detection compatible with Gradle's Configuration Cache:
 /// Gradle tracks the value as an external input and can re-evaluate it when the
-/// operating system or architecture reported by the JVM changes.
+/// operating system or architecture reported by the JVM changes. The host itself is only probed
+/// once per daemon, so checking a cached configuration stays cheap.
 public abstract class BunSystemDetector implements ValueSource<BunSystem, ValueSourceParameters.None> {
   @Override
   public BunSystem obtain() {
@@ -11,6 +11,7 @@ import org.gradle.api.tasks.Internal;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -27,7 +28,8 @@ import java.util.List;
 /// Typical usage is internal to the plugin. Tasks such as `bunInstall`,
 /// `bunTest`, and `bunRun` configure an instance of this task by:
 ///   - Declaring a dependency on `bunSetup`.
-///   - Setting the Bun executable during `doFirst`.
+///   - Resolving the Bun executable from `install.json` when the task runs, unless
+///     [#getBunExecutableProperty()] is set explicitly.
 ///   - Providing Bun-specific arguments via [#args(String...)].
 ///
 /// This design keeps configuration-time logic minimal and ensures the Bun
@@ -58,22 +60,35 @@ public abstract class BunTask extends Exec {
   /// @throws IllegalStateException if the Bun executable has not been set
   @Override
   protected void exec() {
-    File resolved;
-    if (!getBunExecutableProperty().isPresent()) {
-      final String version = BunHelpers.normalizeVersion(getVersion().getOrNull());
-      final BunSystem system = getSystem().get();
-      final File bunRoot = getBunRootDir().get().getAsFile();
+    if (getBunExecutableProperty().isPresent()) {
+      run(getBunExecutableProperty().get().getAsFile());
+      return;
+    }
 
-      final File installDir = new File(bunRoot, version + File.separator + BunHelpers.stripZip(system.zipName()));
-      resolved = BunHelpers.findBunExecutable(installDir, system.exeName()).orElse(null);
+    final String version = BunHelpers.normalizeVersion(getVersion().getOrNull());
+    final BunSystem system = getSystem().get();
+    final File bunRoot = getBunRootDir().get().getAsFile();
+    final File platformDir = BunInstallation.platformDir(bunRoot, version, system);
 
-      if (resolved == null) {
-        throw new IllegalStateException("bunExecutable not set (did you dependOn bunSetup?)");
+    // Shared while Bun runs, so cleanup in another build never removes this installation meanwhile
+    try {
+      final BunFileLock lock = BunFileLock.acquireShared(BunInstallation.lockFile(platformDir), "installing or removing Bun " + version + " (" + system.zipName() + ")", BunRetryPolicy.DEFAULT_DEADLINE);
+      try {
+        final File resolved = BunInstallation.locate(platformDir, version, system).orElse(null);
+        if (resolved == null) {
+          throw new IllegalStateException("bunExecutable not set (did you dependOn bunSetup?)");
+        }
+        BunCleanup.markInstallUsed(platformDir);
+        run(resolved);
+      } finally {
+        lock.close();
       }
-    } else {
-      resolved = getBunExecutableProperty().get().getAsFile();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+  }
 
+  private void run(final File resolved) {
     List<String> finalArgs = new ArrayList<>(getBunArgs().get());
 
     if (getForceBun().getOrElse(false)) {
@@ -152,6 +167,10 @@ public abstract class BunTask extends Exec {
     return ghostNode;
   }
 
+  /// Bun executable to run instead of the installed one. The plugin sets it to a Bun found on this
+  /// machine in the resolved version (see [BunDiscoverySource]), and leaves it unset otherwise.
+  ///
+  /// @return the executable override
   @Internal
   public abstract RegularFileProperty getBunExecutableProperty();
 
@@ -0,0 +1,221 @@
+package io.github.tetratheta.bun;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// A range of Bun versions in the npm/semver notation, such as `1.1.x`, `^1.1.0` or `>=1.1 <1.2`.
+///
+/// Supported forms:
+///   - Wildcards and partial versions: `1.1.x`, `1.1.*`, `1.1`, `1.x`, `*`
+///   - Comparators: `>1.1.0`, `>=1.1`, `<1.2`, `<=1.2.3`, `=1.1.0`, combined with spaces (all must hold)
+///   - Caret and tilde: `^1.1.0` (same major), `~1.1.3` (same minor)
+///   - Alternatives: `1.0.x || 1.1.x`
+///
+/// As in npm, pre-releases only match ranges that mention a pre-release themselves.
+public final class BunVersionRange {
+  private static final Pattern EXACT = Pattern.compile("\\d+\\.\\d+\\.\\d+(?:-[0-9A-Za-z.-]+)?");
+  private static final Pattern COMPARATOR = Pattern.compile("(\\^|~|>=|<=|>|<|=)?\\s*v?((?:\\d+|[xX*])(?:\\.(?:\\d+|[xX*])){0,2})(?:-([0-9A-Za-z.-]+))?");
+
+  private final String text;
+  private final List<List<Bound>> alternatives;
+  private final boolean allowsPrerelease;
+
+  private BunVersionRange(final String text, final List<List<Bound>> alternatives, final boolean allowsPrerelease) {
+    this.text = text;
+    this.alternatives = alternatives;
+    this.allowsPrerelease = allowsPrerelease;
+  }
+
+  /// Returns whether a configured version is a range rather than an exact version or `"latest"`.
+  ///
+  /// @param version the normalized configured version
+  /// @return `true` unless `version` is `"latest"` or a full `major.minor.patch` version
+  public static boolean isRange(final String version) {
+    return !BunHelpers.LATEST.equals(version) && !EXACT.matcher(version).matches();
+  }
+
+  /// Parses a range.
+  ///
+  /// @param text the range
+  /// @return the parsed range
+  /// @throws IllegalArgumentException if `text` is not a valid range
+  public static BunVersionRange parse(final String text) {
+    final List<List<Bound>> alternatives = new ArrayList<>();
+    boolean allowsPrerelease = false;
+
+    for (String alternative : text.trim().split("\\|\\|", -1)) {
+      final String comparators = alternative.trim();
+      if (comparators.isEmpty()) {
+        throw new IllegalArgumentException("Invalid Bun version range \"" + text + "\": empty alternative");
+      }
+
+      // Comparators follow each other, separated by whitespace
+      final List<Bound> bounds = new ArrayList<>();
+      final Matcher matcher = COMPARATOR.matcher(comparators);
+      int end = 0;
+      while (end < comparators.length()) {
+        if (!matcher.find(end) || matcher.start() != end) {
+          throw new IllegalArgumentException("Invalid Bun version range \"" + text + "\" at \"" + comparators.substring(end) + "\"");
+        }
+        allowsPrerelease |= matcher.group(3) != null;
+        try {
+          bounds.addAll(bounds(matcher.group(1) == null ? "" : matcher.group(1), matcher.group(2), matcher.group(3)));
+        } catch (NumberFormatException | ArithmeticException e) {
+          throw new IllegalArgumentException("Invalid Bun version range \"" + text + "\": " + matcher.group(2) + " is too large", e);
+        }
+        end = matcher.end();
+        while (end < comparators.length() && Character.isWhitespace(comparators.charAt(end))) {
+          end++;
+        }
+      }
+      alternatives.add(bounds);
+    }
+    return new BunVersionRange(text.trim(), List.copyOf(alternatives), allowsPrerelease);
+  }
+
+  /// Returns whether a version is in this range.
+  ///
+  /// @param version a full version such as `"1.1.3"`
+  /// @return `true` if any alternative of the range accepts it; `false` for unparsable versions
+  public boolean matches(final String version) {
+    final Optional<Version> parsed = Version.parse(version);
+    if (parsed.isEmpty() || (parsed.get().prerelease() != null && !allowsPrerelease)) {
+      return false;
+    }
+    for (List<Bound> bounds : alternatives) {
+      if (bounds.stream().allMatch(bound -> bound.accepts(parsed.get()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /// Returns the highest version in this range.
+  ///
+  /// @param versions the known versions
+  /// @return the highest matching version, or empty if none matches
+  public Optional<String> best(final Collection<String> versions) {
+    return versions.stream().filter(this::matches).max((a, b) -> Version.parse(a).orElseThrow().compareTo(Version.parse(b).orElseThrow()));
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  /// Translates one comparator into lower and upper bounds, filling in wildcards and missing parts.
+  private static List<Bound> bounds(final String operator, final String partial, final String prerelease) {
+    final String[] parts = partial.split("\\.");
+    final int[] numbers = new int[3];
+    int given = 0;
+    while (given < parts.length && !parts[given].matches("[xX*]")) {
+      numbers[given] = Integer.parseInt(parts[given]);
+      given++;
+    }
+
+    final Version floor = new Version(numbers[0], numbers[1], numbers[2], given == 3 ? prerelease : null);
+    if (given == 0) {
+      // "*" and friends, whatever the operator
+      return operator.equals("<") || operator.equals(">") ? List.of(Bound.NONE) : List.of();
+    }
+
+    // The first version above everything the partial version covers, e.g. 1.1 -> 1.2.0
+    final Version next = given == 3 ? null : bump(floor, given - 1);
+
+    return switch (operator) {
+      case "", "=" -> next == null ? List.of(new Bound(floor, true, floor, true)) : List.of(new Bound(floor, true, next, false));
+      case ">=" -> List.of(new Bound(floor, true, null, false));
+      case ">" -> next == null ? List.of(new Bound(floor, false, null, false)) : List.of(new Bound(next, true, null, false));
+      case "<" -> List.of(new Bound(null, false, floor, false));
+      case "<=" -> next == null ? List.of(new Bound(null, false, floor, true)) : List.of(new Bound(null, false, next, false));
+      case "~" -> List.of(new Bound(floor, true, bump(floor, Math.min(given - 1, 1)), false));
+      case "^" -> {
+        // The first non-zero part given may not change
+        int fixed = 0;
+        while (fixed < given - 1 && numbers[fixed] == 0) {
+          fixed++;
+        }
+        yield List.of(new Bound(floor, true, bump(floor, fixed), false));
+      }
+      default -> throw new IllegalArgumentException("Unknown operator " + operator);
+    };
+  }
+
+  private static Version bump(final Version version, final int index) {
+    return switch (index) {
+      case 0 -> new Version(Math.addExact(version.major(), 1), 0, 0, null);
+      case 1 -> new Version(version.major(), Math.addExact(version.minor(), 1), 0, null);
+      default -> new Version(version.major(), version.minor(), Math.addExact(version.patch(), 1), null);
+    };
+  }
+
+  /// An interval of versions; a `null` end is unbounded.
+  private record Bound(Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+    /// Matches nothing, for `<*` and `>*`.
+    static final Bound NONE = new Bound(new Version(0, 0, 0, null), false, new Version(0, 0, 0, null), false);
+
+    boolean accepts(final Version version) {
+      if (lower != null) {
+        final int c = version.compareTo(lower);
+        if (c < 0 || (c == 0 && !lowerInclusive)) {
+          return false;
+        }
+      }
+      if (upper != null) {
+        final int c = version.compareTo(upper);
+        return c < 0 || (c == 0 && upperInclusive);
+      }
+      return true;
+    }
+  }
+
+  /// A full version with an optional pre-release, ordered by semver precedence.
+  record Version(int major, int minor, int patch, String prerelease) implements Comparable<Version> {
+    private static final Pattern FULL = Pattern.compile("v?(\\d+)\\.(\\d+)\\.(\\d+)(?:-([0-9A-Za-z.-]+))?(?:\\+.*)?");
+
+    static Optional<Version> parse(final String version) {
+      final Matcher matcher = FULL.matcher(version.trim());
+      if (!matcher.matches()) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.of(new Version(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)), matcher.group(4)));
+      } catch (NumberFormatException e) {
+        return Optional.empty();
+      }
+    }
+
+    @Override
+    public int compareTo(final Version other) {
+      int c = Integer.compare(major, other.major);
+      if (c == 0) c = Integer.compare(minor, other.minor);
+      if (c == 0) c = Integer.compare(patch, other.patch);
+      if (c != 0) return c;
+
+      // A release is above all of its pre-releases
+      if (prerelease == null || other.prerelease == null) {
+        return prerelease == null ? (other.prerelease == null ? 0 : 1) : -1;
+      }
+
+      final String[] mine = prerelease.split("\\.");
+      final String[] theirs = other.prerelease.split("\\.");
+      for (int i = 0; i < Math.min(mine.length, theirs.length); i++) {
+        final boolean myNumber = mine[i].matches("\\d+");
+        final boolean theirNumber = theirs[i].matches("\\d+");
+        if (myNumber && theirNumber) {
+          c = Long.compare(Long.parseLong(mine[i]), Long.parseLong(theirs[i]));
+        } else if (myNumber || theirNumber) {
+          c = myNumber ? -1 : 1;
+        } else {
+          c = mine[i].compareTo(theirs[i]);
+        }
+        if (c != 0) return c;
+      }
+      return Integer.compare(mine.length, theirs.length);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// [ValueSource] that resolves a [BunVersionRange] such as `1.1.x` to the highest matching Bun release.
+///
+/// Ranges are resolved against an index of all release versions, downloaded once and kept for
+/// every build on the machine:
+/// ```
+/// <gradleUserHome>/caches/bun/releases.properties
+/// ```
+/// Until the configured TTL has passed, the index is used without any network access. After that,
+/// the first page of the GitHub releases API is requested with the previous `ETag`; as new
+/// releases are listed first, an unchanged first page (`304 Not Modified`) means the index is
+/// current and only renews it. A range that matches nothing in a fresh index triggers a refresh
+/// right away, since it may ask for a release published after the index was fetched.
+///
+/// Offline and on failure, the index is used as it is, like [BunLatestVersionSource] does with its pin.
+///
+/// The resolved version is what the build sees: it names the installation directory and is an
+/// input of `bunSetup`, so a new patch release moves both exactly when the range resolves to it.
+public abstract class BunVersionRangeSource implements ValueSource<String, BunVersionRangeSource.Params> {
+  private static final Logger LOGGER = Logging.getLogger(BunVersionRangeSource.class);
+  private static final URI RELEASES = URI.create("https://api.github.com/repos/oven-sh/bun/releases");
+  private static final int PAGE_SIZE = 100;
+  private static final Pattern TAG_NAME = Pattern.compile("\"tag_name\"\\s*:\\s*\"([^\"]+)\"");
+  private static final String KEY = "versions";
+  private static final String COMMENT = "Bun release versions; delete to fetch again";
+
+  /// Parameters of the [BunVersionRangeSource].
+  public interface Params extends ValueSourceParameters {
+    /// The range to resolve.
+    ///
+    /// @return a property representing the configured range
+    Property<String> getRange();
+
+    /// File the release index is kept in.
+    ///
+    /// @return a file property pointing to the index file
+    RegularFileProperty getIndexFile();
+
+    /// How long the index is used before it is checked again.
+    ///
+    /// @return a property representing the TTL
+    Property<Duration> getTtl();
+
+    /// Whether to disable SSL certificate verification for the lookup.
+    ///
+    /// @return a property representing whether SSL verification is disabled
+    Property<Boolean> getDisableSslVerification();
+
+    /// Time allowed to establish a connection.
+    ///
+    /// @return a property representing the connect timeout
+    Property<Duration> getConnectTimeout();
+
+    /// Time allowed to wait for the response.
+    ///
+    /// @return a property representing the read timeout
+    Property<Duration> getReadTimeout();
+
+    /// Time a response body may deliver no data.
+    ///
+    /// @return a property representing the idle timeout
+    Property<Duration> getIdleTimeout();
+
+    /// How a failed lookup is retried.
+    ///
+    /// @return a property representing the retry policy
+    Property<BunRetryPolicy> getRetryPolicy();
+
+    /// Whether Gradle runs offline, so the releases API must not be contacted.
+    ///
+    /// @return a property representing whether offline mode is enabled
+    Property<Boolean> getOffline();
+
+    /// The GitHub releases API endpoint listing Bun releases, paged with `per_page` and `page`.
+    ///
+    /// Defaults to the `oven-sh/bun` repository on GitHub.
+    ///
+    /// @return a property representing the releases endpoint
+    Property<URI> getReleasesApi();
+  }
+
+  @Override
+  public String obtain() {
+    final BunVersionRange range = BunVersionRange.parse(getParameters().getRange().get());
+    final File indexFile = getParameters().getIndexFile().get().getAsFile();
+    final Optional<BunPin> cached = BunPin.read(indexFile, KEY);
+    final Instant now = Instant.now();
+
+    if (cached.isPresent() && cached.get().isFresh(now, getParameters().getTtl().get())) {
+      final Optional<String> best = range.best(versions(cached.get()));
+      if (best.isPresent() || cached.get().failed() != null || getParameters().getOffline().get()) {
+        return resolved(range, best, indexFile);
+      }
+    }
+
+    if (getParameters().getOffline().get()) {
+      if (cached.isPresent()) {
+        LOGGER.info("Offline, resolving Bun {} against the release index of {}", range, cached.get().checked());
+        return resolved(range, range.best(versions(cached.get())), indexFile);
+      }
+      throw new IllegalStateException("Cannot resolve Bun version \"" + range + "\" while offline: no release index at " + indexFile + ".\nSet bun.version to an exact version, or run the build once without --offline.");
+    }
+
+    final BunPin index;
+    try {
+      index = refresh(cached, now);
+    } catch (IOException e) {
+      if (cached.isPresent()) {
+        LOGGER.warn("Could not refresh the Bun release index, using the one of {}: {}", cached.get().checked(), e.getMessage());
+        cached.get().failedAt(now).write(indexFile, KEY, COMMENT);
+        return resolved(range, range.best(versions(cached.get())), indexFile);
+      }
+      throw new UncheckedIOException("Could not fetch the Bun release index to resolve \"" + range + "\"", e);
+    }
+
+    index.write(indexFile, KEY, COMMENT);
+    return resolved(range, range.best(versions(index)), indexFile);
+  }
+
+  private static String resolved(final BunVersionRange range, final Optional<String> best, final File indexFile) {
+    final String version = best.orElseThrow(() -> new IllegalStateException("No Bun release matches \"" + range + "\" in the release index at " + indexFile + "."));
+    LOGGER.info("Bun version \"{}\" resolved to {}", range, version);
+    return version;
+  }
+
+  /// Returns the release versions of an index, newest first.
+  private static List<String> versions(final BunPin index) {
+    return List.of(index.value().split(","));
+  }
+
+  /// Fetches the index again, or only renews it if the first page did not change.
+  private BunPin refresh(final Optional<BunPin> cached, final Instant now) throws IOException {
+    final BunHttpTransport transport = new BunHttpTransport(getParameters().getDisableSslVerification().get(), getParameters().getConnectTimeout().get(), getParameters().getReadTimeout().get(), getParameters().getIdleTimeout().get());
+    final BunRetryPolicy.Budget budget = getParameters().getRetryPolicy().get().begin();
+    final URI api = getParameters().getReleasesApi().getOrElse(RELEASES);
+    final Set<String> versions = new LinkedHashSet<>();
+    String etag = "";
+
+    for (int page = 1; ; page++) {
+      final URI uri = URI.create(api + "?per_page=" + PAGE_SIZE + "&page=" + page);
+      final List<String> headers = new ArrayList<>(List.of("Accept", "application/vnd.github+json"));
+      if (page == 1) {
+        cached.filter(index -> !index.etag().isEmpty()).ifPresent(index -> headers.addAll(List.of("If-None-Match", index.etag())));
+      }
+
+      final Page result = budget.call("Fetching Bun releases (page " + page + ")", attempt -> {
+        final HttpResponse<InputStream> response = transport.get(uri, headers.toArray(String[]::new));
+        try (InputStream body = response.body()) {
+          if (response.statusCode() == 304) {
+            return null;
+          }
+          BunHttpTransport.expectStatus(response, 200, "requesting");
+          return new Page(new String(body.readAllBytes(), StandardCharsets.UTF_8), response.headers().firstValue("ETag").orElse(""));
+        }
+      });
+
+      if (result == null) {
+        // The newest releases are unchanged, so is the rest
+        return cached.orElseThrow().renewed(now);
+      }
+      if (page == 1) {
+        etag = result.etag();
+      }
+
+      int tags = 0;
+      final Matcher matcher = TAG_NAME.matcher(result.body());
+      while (matcher.find()) {
+        tags++;
+        if (matcher.group(1).startsWith("bun-v")) {
+          versions.add(matcher.group(1).substring("bun-v".length()));
+        }
+      }
+      if (tags < PAGE_SIZE) {
+        break;
+      }
+    }
+
+    LOGGER.lifecycle("Fetched the Bun release index ({} releases)", versions.size());
+    return new BunPin(String.join(",", versions), etag, now, null);
+  }
+
+  private record Page(String body, String etag) {
+  }
+}
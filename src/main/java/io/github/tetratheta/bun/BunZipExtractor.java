@@ -0,0 +1,272 @@
+package io.github.tetratheta.bun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/// Extracts a zip file with several workers using the random access of [ZipFile].
+///
+/// An optional [BunExtractionManifest] limits extraction to the entries the runtime needs;
+/// the others are skipped without reading their data, and a [Report] lists what was left out.
+///
+/// The central directory is read once, directories are created up front, and the file entries
+/// are then handed out largest first to a bounded pool of workers pulling from a shared index,
+/// so one large executable never waits behind many small files. Each worker:
+///   - reuses a single buffer for all of its entries (`ZipFile` already pools its inflaters);
+///   - sets the final length of each output file larger than its buffer before writing, so the
+///     file never grows while it is written (smaller files are written in one go anyway);
+///   - writes through a [FileChannel] instead of a buffered stream.
+///
+/// Unix file modes and symlinks recorded in the archive are restored afterward (see [BunZipMetadata]).
+/// Entry names that would resolve outside the destination directory are rejected.
+public class BunZipExtractor {
+  /// Default maximum number of workers.
+  public static final int DEFAULT_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final int threads;
+
+  /// Creates an extractor using at most `threads` workers.
+  ///
+  /// @param threads the maximum number of workers (at least 1)
+  public BunZipExtractor(final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /// Extracts every entry of `zip` into `destination`.
+  ///
+  /// @param zip         the zip file to extract
+  /// @param destination the destination directory where the zip contents will be written
+  /// @return what was extracted
+  /// @throws IOException if the zip cannot be read or any entry cannot be written
+  public Report extract(final File zip, final File destination) throws IOException {
+    return extract(zip, destination, BunExtractionManifest.ALL);
+  }
+
+  /// Extracts the entries of `zip` selected by `manifest` into `destination`.
+  ///
+  /// Entries that are not selected are never read; only the central directory lists them.
+  /// Directory entries are only created when selected or when a selected file needs them.
+  ///
+  /// @param zip         the zip file to extract
+  /// @param destination the destination directory where the zip contents will be written
+  /// @param manifest    which entries to extract
+  /// @return what was extracted and skipped
+  /// @throws IOException if the zip cannot be read or any entry cannot be written
+  public Report extract(final File zip, final File destination, final BunExtractionManifest manifest) throws IOException {
+    final Path root = destination.toPath().toAbsolutePath().normalize();
+    final Report report = new Report();
+
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      final List<ZipEntry> files = new ArrayList<>();
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      Files.createDirectories(root);
+
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        final Path output = resolve(root, entry);
+
+        if (!manifest.includes(entry.getName())) {
+          report.skipped(entry);
+        } else if (entry.isDirectory()) {
+          Files.createDirectories(output);
+        } else {
+          Files.createDirectories(output.getParent());
+          files.add(entry);
+          report.extracted(entry);
+        }
+      }
+
+      scheduleLargestFirst(files);
+      final int workers = Math.min(threads, files.size());
+
+      if (workers <= 1) {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        for (ZipEntry entry : files) {
+          write(zipFile, entry, resolve(root, entry), buffer);
+        }
+      } else {
+        extractParallel(zipFile, files, root, workers);
+      }
+    }
+
+    BunZipMetadata.read(zip).apply(root);
+    return report;
+  }
+
+  /// Orders file entries by compressed size, largest first, so the longest entry starts right away.
+  ///
+  /// @param files the file entries, sorted in place
+  static void scheduleLargestFirst(final List<ZipEntry> files) {
+    files.sort(Comparator.comparingLong(ZipEntry::getCompressedSize).reversed());
+  }
+
+  private static void extractParallel(final ZipFile zipFile, final List<ZipEntry> files, final Path root, final int workers) throws IOException {
+    final AtomicInteger next = new AtomicInteger();
+    final ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      final List<CompletableFuture<Void>> running = new ArrayList<>(workers);
+      for (int i = 0; i < workers; i++) {
+        running.add(CompletableFuture.runAsync(() -> {
+          final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+          for (int index = next.getAndIncrement(); index < files.size(); index = next.getAndIncrement()) {
+            final ZipEntry entry = files.get(index);
+            try {
+              write(zipFile, entry, resolve(root, entry), buffer);
+            } catch (IOException e) {
+              // Stop the other workers early; the archive is discarded anyway
+              next.set(files.size());
+              throw new UncheckedIOException(e);
+            }
+          }
+        }, pool));
+      }
+      join(running);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void write(final ZipFile zipFile, final ZipEntry entry, final Path output, final ByteBuffer buffer) throws IOException {
+    try (InputStream in = zipFile.getInputStream(entry); RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+      final long size = entry.getSize();
+      if (size > BUFFER_SIZE) {
+        file.setLength(size);
+      }
+
+      final FileChannel channel = file.getChannel();
+      final byte[] array = buffer.array();
+      long written = 0;
+      int read;
+
+      while ((read = in.read(array, 0, array.length)) >= 0) {
+        buffer.clear().limit(read);
+        while (buffer.hasRemaining()) {
+          written += channel.write(buffer);
+        }
+      }
+
+      // Trim in case the recorded size was wrong; the inflated data is authoritative
+      if (written != size) {
+        file.setLength(written);
+      }
+    }
+  }
+
+  /// Resolves the output path of an entry, rejecting names such as `../x` that would leave `root`.
+  ///
+  /// @param root  the normalized absolute destination directory
+  /// @param entry the entry
+  /// @return the normalized output path below `root`
+  /// @throws IOException if the entry would be written outside of `root`
+  static Path resolve(final Path root, final ZipEntry entry) throws IOException {
+    final Path output = root.resolve(entry.getName()).normalize();
+    if (!output.startsWith(root)) {
+      throw new IOException("Zip entry outside of the destination directory: " + entry.getName());
+    }
+    return output;
+  }
+
+  /// Counts of extracted and skipped entries.
+  ///
+  /// Directory entries are not counted.
+  public static final class Report {
+    private static final int LISTED = 5;
+
+    private int extracted;
+    private long extractedBytes;
+    private int skipped;
+    private long skippedBytes;
+    private final List<String> skippedNames = new ArrayList<>();
+
+    /// Creates an empty report.
+    public Report() {
+      // Filled while extracting
+    }
+
+    /// Records an extracted entry.
+    ///
+    /// @param entry the entry
+    public void extracted(final ZipEntry entry) {
+      if (!entry.isDirectory()) {
+        extracted++;
+        extractedBytes += Math.max(0, entry.getSize());
+      }
+    }
+
+    /// Records a skipped entry.
+    ///
+    /// @param entry the entry
+    public void skipped(final ZipEntry entry) {
+      if (!entry.isDirectory()) {
+        skipped++;
+        skippedBytes += Math.max(0, entry.getSize());
+        if (skippedNames.size() < LISTED) {
+          skippedNames.add(entry.getName());
+        }
+      }
+    }
+
+    /// Returns the number of files skipped.
+    ///
+    /// @return the skipped file count
+    public int skippedCount() {
+      return skipped;
+    }
+
+    /// Returns a summary such as `"1 of 3 files (92.1 MiB), skipped 2 (12.0 MiB): a, b"`.
+    ///
+    /// @return the summary
+    public String describe() {
+      final String summary = String.format(Locale.ROOT, "%d of %d files (%.1f MiB)", extracted, extracted + skipped, extractedBytes / (1024.0 * 1024.0));
+      if (skipped == 0) {
+        return summary;
+      }
+      final String more = skipped > skippedNames.size() ? ", ..." : "";
+      return summary + String.format(Locale.ROOT, ", skipped %d (%.1f MiB): %s%s", skipped, skippedBytes / (1024.0 * 1024.0), String.join(", ", skippedNames), more);
+    }
+  }
+
+  private static void join(final List<CompletableFuture<Void>> running) throws IOException {
+    IOException failure = null;
+
+    for (CompletableFuture<Void> future : running) {
+      try {
+        future.join();
+      } catch (CompletionException e) {
+        final Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+        if (failure == null) {
+          failure = cause instanceof IOException io ? io : new IOException(cause);
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Unix file modes and symbolic links recorded in the central directory of a zip archive.
+///
+/// `java.util.zip` drops the "external attributes" of an entry, which is where zip tools on
+/// Unix store the file mode, including whether an entry is a symlink. This class reads them
+/// straight from the central directory, either from a zip file ([#read(File)]) or from the tail
+/// of a streamed archive ([TailRecorder]), and re-applies them to an extracted tree ([#apply(Path)]).
+///
+/// Entries written on other systems carry no Unix mode and are left as extracted.
+public class BunZipMetadata {
+  private static final Logger LOGGER = Logging.getLogger(BunZipMetadata.class);
+
+  private static final int CEN_SIG = 0x02014b50;
+  private static final int END_SIG = 0x06054b50;
+  private static final int ZIP64_END_SIG = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+  private static final int CEN_HEADER = 46;
+  private static final int END_HEADER = 22;
+  private static final int ZIP64_END_HEADER = 56;
+  private static final int ZIP64_LOCATOR = 20;
+  private static final int MAX_COMMENT = 0xFFFF;
+  private static final int HOST_UNIX = 3;
+
+  private static final int S_IFMT = 0170000;
+  private static final int S_IFDIR = 0040000;
+  private static final int S_IFLNK = 0120000;
+
+  /// Links followed in a row before a link target is considered a loop, as `MAXSYMLINKS` on Linux.
+  private static final int MAX_LINK_DEPTH = 40;
+
+  private static final BunZipMetadata NONE = new BunZipMetadata(Map.of());
+
+  private final Map<String, Integer> modes;
+
+  private BunZipMetadata(final Map<String, Integer> modes) {
+    this.modes = modes;
+  }
+
+  /// Reads the Unix modes of all entries from the central directory of a zip file.
+  ///
+  /// @param zip the zip file
+  /// @return the modes by entry name
+  /// @throws IOException if the file cannot be read or has no valid central directory
+  public static BunZipMetadata read(final File zip) throws IOException {
+    try (FileChannel channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      final int tailLength = (int) Math.min(size, MAX_COMMENT + END_HEADER + ZIP64_LOCATOR);
+      final ByteBuffer tail = readFully(channel, size - tailLength, tailLength);
+      final int end = findEnd(tail);
+
+      long cenSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+      long cenOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+      if ((cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) && end >= ZIP64_LOCATOR && tail.getInt(end - ZIP64_LOCATOR) == ZIP64_LOCATOR_SIG) {
+        final ByteBuffer zip64 = readFully(channel, tail.getLong(end - ZIP64_LOCATOR + 8), ZIP64_END_HEADER);
+        if (zip64.getInt(0) != ZIP64_END_SIG) {
+          throw new IOException("Invalid ZIP64 end of central directory in " + zip);
+        }
+        cenSize = zip64.getLong(40);
+        cenOffset = zip64.getLong(48);
+      }
+
+      if (cenSize > Integer.MAX_VALUE) {
+        throw new IOException("Central directory too large in " + zip);
+      }
+      return new BunZipMetadata(parseCentral(readFully(channel, cenOffset, (int) cenSize)));
+    }
+  }
+
+  /// Reads the Unix modes of all entries from the last bytes of a zip archive.
+  ///
+  /// @param tail bytes ending with the end of the archive and containing its whole central directory
+  /// @return the modes by entry name, or none if the central directory is not fully contained
+  public static BunZipMetadata parse(final byte[] tail) {
+    final ByteBuffer buffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      final int end = findEnd(buffer);
+      long cenSize = Integer.toUnsignedLong(buffer.getInt(end + 12));
+      int cenEnd = end;
+
+      // A ZIP64 record without extensible data sits right before its locator
+      final int zip64 = end - ZIP64_LOCATOR - ZIP64_END_HEADER;
+      if (cenSize == 0xFFFFFFFFL && zip64 >= 0 && buffer.getInt(zip64) == ZIP64_END_SIG) {
+        cenSize = buffer.getLong(zip64 + 40);
+        cenEnd = zip64;
+      }
+
+      if (cenSize > cenEnd) {
+        LOGGER.info("Central directory of the streamed archive was not captured, file modes not restored");
+        return NONE;
+      }
+      return new BunZipMetadata(parseCentral(buffer.slice(cenEnd - (int) cenSize, (int) cenSize).order(ByteOrder.LITTLE_ENDIAN)));
+    } catch (IOException | IndexOutOfBoundsException e) {
+      LOGGER.info("Could not read the central directory of the streamed archive, file modes not restored: {}", e.getMessage());
+      return NONE;
+    }
+  }
+
+  /// Applies the recorded modes to a tree extracted from the archive.
+  ///
+  /// Symlink entries, which extraction writes as small files holding the link target, are
+  /// replaced by real symlinks. Where symlinks cannot be created (e.g. on Windows without the
+  /// privilege), a file target is copied instead. Permissions are only set on file systems with
+  /// POSIX attributes and never through a symlink, and directories are handled last so a
+  /// read-only directory never blocks the rest.
+  ///
+  /// A link may point through links created before it (`a -> .`, then `b -> a/../..`), so checking
+  /// each target by its name is not enough. Instead every target is resolved against the finished
+  /// tree, following the links in it the way the file system will, and must stay inside `root`.
+  ///
+  /// @param root the directory the archive was extracted into
+  /// @throws IOException if a mode cannot be applied, or an entry or symlink escapes `root`
+  public void apply(final Path root) throws IOException {
+    if (modes.isEmpty()) {
+      return;
+    }
+
+    final Path base = root.toAbsolutePath().normalize();
+    final Path realBase = base.toRealPath();
+    final boolean posix = Files.getFileStore(base).supportsFileAttributeView(PosixFileAttributeView.class);
+    final List<Map.Entry<Path, Integer>> directories = new ArrayList<>();
+    final Map<Path, String> links = new LinkedHashMap<>();
+
+    // Extraction creates no symlinks, so until the links below exist no path can lead out of the tree
+    for (Map.Entry<String, Integer> entry : modes.entrySet()) {
+      final Path path = base.resolve(entry.getKey()).normalize();
+      final int mode = entry.getValue();
+      if (!path.startsWith(base)) {
+        throw new IOException("Zip entry outside of the destination directory: " + entry.getKey());
+      }
+      if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+        continue;
+      }
+
+      if ((mode & S_IFMT) == S_IFLNK) {
+        links.put(path, Files.readString(path, StandardCharsets.UTF_8));
+      } else if ((mode & S_IFMT) == S_IFDIR) {
+        directories.add(Map.entry(path, mode));
+      } else if (posix) {
+        setPermissions(path, mode);
+      }
+    }
+
+    final List<Path> copies = new ArrayList<>();
+    for (Map.Entry<Path, String> link : links.entrySet()) {
+      if (!symlink(base, link.getKey(), link.getValue())) {
+        copies.add(link.getKey());
+      }
+    }
+    for (Map.Entry<Path, String> link : links.entrySet()) {
+      final Path target = realTarget(realBase, base, link.getKey(), link.getValue(), 0);
+      if (copies.contains(link.getKey())) {
+        if (!Files.isRegularFile(target)) {
+          throw new IOException("Could not create symlink " + link.getKey() + " -> " + link.getValue());
+        }
+        Files.copy(target, link.getKey(), StandardCopyOption.COPY_ATTRIBUTES);
+      }
+    }
+
+    if (posix) {
+      directories.sort(Comparator.comparingInt((Map.Entry<Path, Integer> e) -> e.getKey().getNameCount()).reversed());
+      for (Map.Entry<Path, Integer> directory : directories) {
+        // Links now exist, so a directory is only changed where it really is
+        if (directory.getKey().toRealPath().equals(realBase.resolve(base.relativize(directory.getKey())))) {
+          setPermissions(directory.getKey(), directory.getValue());
+        }
+      }
+    }
+  }
+
+  /// Replaces the placeholder file at `path` by a symlink to `target`, returning false if symlinks are not supported.
+  private static boolean symlink(final Path root, final Path path, final String target) throws IOException {
+    if (Path.of(target).isAbsolute() || !path.getParent().resolve(target).normalize().startsWith(root)) {
+      throw new IOException("Zip symlink " + root.relativize(path) + " points outside of the destination directory: " + target);
+    }
+
+    Files.delete(path);
+    try {
+      Files.createSymbolicLink(path, Path.of(target));
+      return true;
+    } catch (UnsupportedOperationException | IOException e) {
+      return false;
+    }
+  }
+
+  /// Resolves the target of the link at `link` name by name, following the links already in the tree.
+  ///
+  /// @return the real path the link leads to; missing names past the last existing one are kept as they are
+  /// @throws IOException if the target leaves `realRoot` at any step, or links nest too deeply
+  private static Path realTarget(final Path realRoot, final Path root, final Path link, final String target, final int depth) throws IOException {
+    if (depth > MAX_LINK_DEPTH) {
+      throw new IOException("Too many levels of symlinks at " + root.relativize(link));
+    }
+
+    Path current = link.getParent().toRealPath();
+    for (Path name : Path.of(target)) {
+      if (name.toString().equals("..")) {
+        current = current.getParent();
+      } else if (!name.toString().equals(".")) {
+        current = current.resolve(name.toString());
+        if (Files.isSymbolicLink(current)) {
+          current = Files.exists(current) ? current.toRealPath() : realTarget(realRoot, root, current, Files.readSymbolicLink(current).toString(), depth + 1);
+        }
+      }
+
+      if (current == null || !current.startsWith(realRoot)) {
+        throw new IOException("Zip symlink " + root.relativize(link) + " points outside of the destination directory: " + target);
+      }
+    }
+    return current;
+  }
+
+  private static void setPermissions(final Path path, final int mode) throws IOException {
+    if (Files.isSymbolicLink(path)) {
+      return;
+    }
+    Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).setPermissions(permissions(mode));
+  }
+
+  private static Set<PosixFilePermission> permissions(final int mode) {
+    final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+    final PosixFilePermission[] bits = PosixFilePermission.values();
+
+    // PosixFilePermission is declared from OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+    for (int i = 0; i < bits.length; i++) {
+      if ((mode & (0400 >> i)) != 0) {
+        permissions.add(bits[i]);
+      }
+    }
+    return permissions;
+  }
+
+  private static Map<String, Integer> parseCentral(final ByteBuffer cen) throws IOException {
+    final Map<String, Integer> modes = new LinkedHashMap<>();
+    int pos = 0;
+
+    while (pos + CEN_HEADER <= cen.limit()) {
+      if (cen.getInt(pos) != CEN_SIG) {
+        throw new IOException("Invalid central directory header at offset " + pos);
+      }
+
+      final int host = (cen.getShort(pos + 4) >> 8) & 0xFF;
+      final int nameLength = Short.toUnsignedInt(cen.getShort(pos + 28));
+      final int extraLength = Short.toUnsignedInt(cen.getShort(pos + 30));
+      final int commentLength = Short.toUnsignedInt(cen.getShort(pos + 32));
+      final int mode = cen.getInt(pos + 38) >>> 16;
+
+      if (host == HOST_UNIX && mode != 0) {
+        final byte[] name = new byte[nameLength];
+        cen.get(pos + CEN_HEADER, name);
+        modes.put(new String(name, StandardCharsets.UTF_8), mode);
+      }
+      pos += CEN_HEADER + nameLength + extraLength + commentLength;
+    }
+
+    return modes;
+  }
+
+  private static int findEnd(final ByteBuffer tail) throws IOException {
+    for (int pos = tail.limit() - END_HEADER; pos >= 0; pos--) {
+      if (tail.getInt(pos) == END_SIG && pos + END_HEADER + Short.toUnsignedInt(tail.getShort(pos + 20)) == tail.limit()) {
+        return pos;
+      }
+    }
+    throw new IOException("No end of central directory record found");
+  }
+
+  private static ByteBuffer readFully(final FileChannel channel, final long position, final int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    return buffer.flip();
+  }
+
+  /// Stream wrapper that keeps the end of a streamed archive so its central directory can be read.
+  ///
+  /// Until [#capture()] is called only the last 64 KiB are kept, which covers whatever the zip
+  /// reader read ahead past the last entry. From then on everything is kept, so draining the
+  /// stream after extraction yields the complete central directory through [#metadata()].
+  public static final class TailRecorder extends FilterInputStream {
+    private static final int WINDOW = 64 * 1024;
+
+    private final byte[] window = new byte[WINDOW];
+    private long seen;
+    private ByteArrayOutputStream captured;
+
+    /// Wraps `in`.
+    ///
+    /// @param in the archive stream
+    public TailRecorder(final InputStream in) {
+      super(in);
+    }
+
+    /// Starts keeping every byte read from now on.
+    public void capture() {
+      captured = new ByteArrayOutputStream();
+    }
+
+    /// Parses the central directory from the bytes kept so far.
+    ///
+    /// @return the recorded modes, or none if the central directory was not captured
+    public BunZipMetadata metadata() {
+      final int windowLength = (int) Math.min(seen, WINDOW);
+      final ByteArrayOutputStream tail = new ByteArrayOutputStream(windowLength + (captured == null ? 0 : captured.size()));
+      final int start = (int) ((seen - windowLength) % WINDOW);
+      tail.write(window, start, Math.min(windowLength, WINDOW - start));
+      tail.write(window, 0, windowLength - Math.min(windowLength, WINDOW - start));
+      if (captured != null) {
+        tail.writeBytes(captured.toByteArray());
+      }
+      return parse(tail.toByteArray());
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        record(new byte[] {(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final int n = super.read(b, off, len);
+      if (n > 0) {
+        record(b, off, n);
+      }
+      return n;
+    }
+
+    private void record(final byte[] b, final int off, final int len) {
+      if (captured != null) {
+        captured.write(b, off, len);
+        return;
+      }
+      final int skip = Math.max(0, len - WINDOW);
+      final int at = (int) ((seen + skip) % WINDOW);
+      final int first = Math.min(len - skip, WINDOW - at);
+      System.arraycopy(b, off + skip, window, at, first);
+      System.arraycopy(b, off + skip + first, window, 0, len - skip - first);
+      seen += len;
+    }
+  }
+}
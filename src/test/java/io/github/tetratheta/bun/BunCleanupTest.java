@@ -0,0 +1,144 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunCleanupTest {
+  private static final Duration MONTH = Duration.ofDays(30);
+  private static final String ROOT = "/bun";
+
+  @TempDir
+  Path dir;
+
+  /// Rows of policy, candidates as `name version age-in-hours bytes`, candidates in use and the expected evictions.
+  static Stream<Arguments> retention() {
+    return Stream.of(
+      // Unused for longer than the period
+      Arguments.of(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), "a 1.0.0 1 10, b 1.1.0 719 10, c 1.2.0 721 10, d 1.3.0 2000 10", "", "c, d"),
+      // ... unless the current build uses it
+      Arguments.of(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), "a 1.0.0 1 10, c 1.2.0 721 10, d 1.3.0 2000 10", "d", "c"),
+      // A zero period keeps only what is in use
+      Arguments.of(policy(Duration.ZERO, Integer.MAX_VALUE, Long.MAX_VALUE), "a 1.0.0 1 10, b 1.1.0 2 10", "b", "a"),
+      // Newest two versions; a second platform of a kept version stays with it
+      Arguments.of(policy(MONTH, 2, Long.MAX_VALUE), "a 1.0.0 1 10, b 1.1.0 2 10, c 1.2.0 3 10, d 1.0.0 4 10", "", "c"),
+      // An older version in use takes one of the slots first
+      Arguments.of(policy(MONTH, 2, Long.MAX_VALUE), "a 1.0.0 1 10, b 1.1.0 2 10, c 1.2.0 3 10", "c", "b"),
+      // Byte budget, filled from the most recently used; a later, smaller candidate may still fit
+      Arguments.of(policy(MONTH, Integer.MAX_VALUE, 100), "a 1.0.0 1 60, b 1.1.0 2 50, c 1.2.0 3 30, d 1.3.0 4 20", "", "b, d"),
+      // A candidate in use counts against the budget even if it exceeds it
+      Arguments.of(policy(MONTH, Integer.MAX_VALUE, 100), "a 1.0.0 1 10, b 1.1.0 2 150", "b", "a"),
+      // All three dimensions at once, each evicting one candidate
+      Arguments.of(policy(MONTH, 2, 100), "a 1.0.0 1 40, b 1.0.0 2 70, c 1.1.0 3 40, d 1.2.0 4 10, e 1.1.0 800 1", "", "b, d, e")
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("retention")
+  void selectsWhatThePolicyDoesNotKeep(final BunRetentionPolicy policy, final String candidates, final String inUse, final String evicted) {
+    final long now = System.currentTimeMillis();
+    final List<BunCleanup.Candidate> parsed = new ArrayList<>();
+    for (String row : split(candidates)) {
+      final String[] columns = row.split(" ");
+      parsed.add(new BunCleanup.Candidate(new File(ROOT, columns[0]), columns[1], now - Duration.ofHours(Long.parseLong(columns[2])).toMillis(), Long.parseLong(columns[3]), new File(ROOT, columns[0] + ".lock"), List.of()));
+    }
+    final Set<File> used = Set.copyOf(split(inUse).stream().map(name -> new File(ROOT, name)).toList());
+
+    final List<BunCleanup.Candidate> selected = new BunCleanup(policy, used).select(parsed);
+
+    assertEquals(split(evicted), selected.stream().map(c -> c.dir().getName()).toList());
+  }
+
+  @Test
+  void keepsAnInstallationWhileBunRunsFromIt() throws IOException {
+    final File bunRoot = dir.resolve("bun").toFile();
+    final File platformDir = BunInstallation.platformDir(bunRoot, "1.0.0", TestDistributions.SYSTEM);
+    Files.createDirectories(platformDir.toPath());
+    Files.writeString(new File(platformDir, "bun").toPath(), "bun");
+    final File marker = BunCleanup.installMarker(platformDir);
+    Files.write(marker.toPath(), new byte[0]);
+    assertTrue(marker.setLastModified(System.currentTimeMillis() - Duration.ofDays(60).toMillis()));
+
+    // A running Bun task shares the install lock, so the exclusive tryAcquire of the cleanup fails
+    try (BunFileLock running = BunFileLock.acquireShared(BunInstallation.lockFile(platformDir), "running Bun", Duration.ofSeconds(5))) {
+      new BunCleanup(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), Set.of()).cleanInstalls(bunRoot);
+    }
+    assertTrue(new File(platformDir, "bun").isFile(), "A running installation was removed");
+    assertTrue(marker.isFile());
+
+    // Once Bun is done, the next cleanup renames and deletes it
+    Files.delete(bunRoot.toPath().resolve(".cleanup"));
+    new BunCleanup(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), Set.of()).cleanInstalls(bunRoot);
+    assertFalse(platformDir.exists());
+    assertFalse(marker.exists());
+    assertEquals(List.of(), leftovers(platformDir.getParentFile()));
+  }
+
+  @Test
+  void keepsACacheEntryWhileABuildDownloadsIntoIt() throws IOException {
+    final BunDistributionCache cache = new BunDistributionCache(dir.resolve("cache").toFile());
+    final File systemDir = new File(cache.getRoot(), "1.0.0/" + TestDistributions.SYSTEM.zipName());
+    final File entry = new File(systemDir, "entry");
+    Files.createDirectories(entry.toPath());
+    final long old = System.currentTimeMillis() - Duration.ofDays(60).toMillis();
+    for (String name : List.of(BunDistributionCache.COMPLETE_MARKER, BunDistributionCache.USED_MARKER)) {
+      final File file = new File(entry, name);
+      Files.write(file.toPath(), new byte[0]);
+      assertTrue(file.setLastModified(old));
+    }
+
+    try (BunFileLock downloading = BunFileLock.acquireShared(new File(systemDir, ".lock"), "downloading Bun", Duration.ofSeconds(5))) {
+      new BunCleanup(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), Set.of()).cleanCache(cache);
+    }
+    assertTrue(entry.isDirectory(), "A locked cache entry was removed");
+
+    Files.delete(new File(cache.getRoot(), ".cleanup").toPath());
+    new BunCleanup(policy(MONTH, Integer.MAX_VALUE, Long.MAX_VALUE), Set.of()).cleanCache(cache);
+    assertFalse(entry.exists());
+    assertEquals(List.of(), leftovers(systemDir));
+  }
+
+  @Test
+  void keepsWhatTheCurrentBuildUsesRegardlessOfThePolicy() throws IOException {
+    final File bunRoot = dir.resolve("bun").toFile();
+    final File platformDir = BunInstallation.platformDir(bunRoot, "1.0.0", TestDistributions.SYSTEM);
+    Files.createDirectories(platformDir.toPath());
+    final File marker = BunCleanup.installMarker(platformDir);
+    Files.write(marker.toPath(), new byte[0]);
+    assertTrue(marker.setLastModified(System.currentTimeMillis() - Duration.ofDays(60).toMillis()));
+
+    new BunCleanup(policy(Duration.ZERO, 1, 0), Set.of(platformDir)).cleanInstalls(bunRoot);
+
+    assertTrue(platformDir.isDirectory());
+  }
+
+  private static BunRetentionPolicy policy(final Duration maxUnused, final int maxVersions, final long maxBytes) {
+    return new BunRetentionPolicy(maxUnused, maxVersions, maxBytes);
+  }
+
+  private static List<String> split(final String list) {
+    return list.isEmpty() ? List.of() : List.of(list.split(", "));
+  }
+
+  /// Hidden `.deleting-` directories a removal left behind.
+  private static List<String> leftovers(final File dir) {
+    final String[] names = dir.list((d, name) -> name.startsWith(".deleting-"));
+    return names == null ? List.of() : List.of(names);
+  }
+}
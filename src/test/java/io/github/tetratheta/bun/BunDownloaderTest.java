@@ -0,0 +1,118 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunDownloaderTest {
+  private static final byte[] CONTENT = new byte[(int) (3 * BunDownloader.MIN_PARALLEL_SIZE)];
+
+  static {
+    new Random(42).nextBytes(CONTENT);
+  }
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void downloadsLargeFilesAsParallelRanges() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      final File destination = dir.resolve("bun.zip").toFile();
+
+      final BunDownloader.Result result = downloader(4, 1).download(server.uri(), destination);
+
+      assertEquals(4, result.connections());
+      assertEquals(CONTENT.length, result.bytes());
+      assertEquals(sha256(CONTENT), result.sha256());
+      assertArrayEquals(CONTENT, Files.readAllBytes(destination.toPath()));
+      assertEquals("bytes=0-0", server.ranges().get(0));
+      assertEquals(5, server.ranges().size());
+      assertTrue(server.ranges().stream().skip(1).allMatch(range -> range.matches("bytes=\\d+-\\d+")));
+      assertFalse(new File(destination.getPath() + ".part").exists());
+      assertFalse(new File(destination.getPath() + ".part.properties").exists());
+    }
+  }
+
+  @Test
+  void downloadsOverOneConnectionWhenRangesAreIgnored() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.ignoreRanges();
+      final File destination = dir.resolve("bun.zip").toFile();
+
+      final BunDownloader.Result result = downloader(4, 1).download(server.uri(), destination);
+
+      assertEquals(1, result.connections());
+      assertEquals(1, server.requests());
+      assertEquals(sha256(CONTENT), result.sha256());
+      assertArrayEquals(CONTENT, Files.readAllBytes(destination.toPath()));
+    }
+  }
+
+  @Test
+  void resumesAnInterruptedDownloadFromThePartFile() throws IOException {
+    final File destination = dir.resolve("bun.zip").toFile();
+    final long sent = 1024 * 1024;
+
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.truncateRangesAfter(sent);
+      assertThrows(IOException.class, () -> downloader(4, 1).download(server.uri(), destination));
+    }
+    assertTrue(new File(destination.getPath() + ".part.properties").isFile());
+
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      final BunDownloader.Result result = downloader(4, 1).download(server.uri(), destination);
+
+      assertTrue(result.resumedBytes() > 0, "nothing was resumed");
+      assertEquals(CONTENT.length, result.bytes() + result.resumedBytes());
+      assertTrue(server.ranges().stream().skip(1).noneMatch(range -> range.startsWith("bytes=0-")), "the first segment was fetched from its start again");
+      assertEquals(sha256(CONTENT), result.sha256());
+      assertArrayEquals(CONTENT, Files.readAllBytes(destination.toPath()));
+    }
+  }
+
+  @Test
+  void startsOverWhenTheFileChangedOnTheServer() throws IOException {
+    final File destination = dir.resolve("bun.zip").toFile();
+
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.truncateRangesAfter(1024 * 1024);
+      assertThrows(IOException.class, () -> downloader(4, 1).download(server.uri(), destination));
+    }
+
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.etag("\"v2\"");
+      final BunDownloader.Result result = downloader(4, 1).download(server.uri(), destination);
+
+      assertEquals(0, result.resumedBytes());
+      assertEquals(sha256(CONTENT), result.sha256());
+    }
+  }
+
+  static BunDownloader downloader(final int connections, final int attempts) {
+    final BunHttpTransport transport = new BunHttpTransport(false, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5));
+    final BunRetryPolicy policy = new BunRetryPolicy(attempts, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMinutes(1));
+    return new BunDownloader(transport, connections, policy.begin());
+  }
+
+  static String sha256(final byte[] content) {
+    try {
+      return BunHelpers.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunExtractionManifestTest {
+  @TempDir
+  Path dir;
+
+  @Test
+  void starMatchesWithinOneSegment() {
+    final BunExtractionManifest manifest = new BunExtractionManifest(List.of("*/bun", "lib/*.js"));
+
+    assertTrue(manifest.includes("bun-linux-x64/bun"));
+    assertTrue(manifest.includes("/bun"));
+    assertTrue(manifest.includes("lib/index.js"));
+    assertFalse(manifest.includes("bun"));
+    assertFalse(manifest.includes("a/b/bun"));
+    assertFalse(manifest.includes("lib/deep/index.js"));
+    // Everything but the wildcards is literal, so `.` is not any character
+    assertFalse(manifest.includes("lib/indexjs"));
+  }
+
+  @Test
+  void doubleStarMatchesAcrossSegments() {
+    final BunExtractionManifest manifest = new BunExtractionManifest(List.of("*/lib/**", "**/LICENSE"));
+
+    assertTrue(manifest.includes("bun-linux-x64/lib/a.js"));
+    assertTrue(manifest.includes("bun-linux-x64/lib/deep/er/a.js"));
+    assertTrue(manifest.includes("a/b/c/LICENSE"));
+    assertFalse(manifest.includes("bun-linux-x64/bin/a.js"));
+    assertFalse(manifest.includes("LICENSE"));
+  }
+
+  @Test
+  void questionMarkMatchesOneCharacterOfASegment() {
+    final BunExtractionManifest manifest = new BunExtractionManifest(List.of("bun-?"));
+
+    assertTrue(manifest.includes("bun-1"));
+    assertFalse(manifest.includes("bun-"));
+    assertFalse(manifest.includes("bun-12"));
+    assertFalse(manifest.includes("bun-/"));
+  }
+
+  @Test
+  void defaultsToTheExecutableOfTheSystem() {
+    final BunExtractionManifest linux = BunExtractionManifest.forSystem(BunSystem.LINUX_X64);
+    final BunExtractionManifest windows = BunExtractionManifest.forSystem(BunSystem.WINDOWS_X64);
+
+    assertEquals(List.of("bun", "*/bun"), linux.patterns());
+    assertTrue(linux.includes("bun"));
+    assertTrue(linux.includes("bun-linux-x64/bun"));
+    assertFalse(linux.includes("bun-linux-x64/bun.exe"));
+    assertFalse(linux.includes("bun-linux-x64/README.md"));
+    assertTrue(windows.includes("bun-windows-x64/bun.exe"));
+    assertFalse(windows.includes("bun-windows-x64/bun"));
+    assertFalse(linux.isAll());
+  }
+
+  @Test
+  void isAllOnlyWithADoubleStarPattern() {
+    assertTrue(BunExtractionManifest.ALL.isAll());
+    assertTrue(new BunExtractionManifest(List.of("*/bun", "**")).isAll());
+    assertFalse(new BunExtractionManifest(List.of("*/**")).isAll());
+    assertTrue(BunExtractionManifest.ALL.includes("any/thing/at/all"));
+  }
+
+  @Test
+  void idIsStableAndDependsOnThePatterns() {
+    final String id = new BunExtractionManifest(List.of("bun", "*/bun")).id();
+
+    assertTrue(id.matches("[0-9a-f]{8}"), id);
+    assertEquals(id, BunExtractionManifest.forSystem(BunSystem.LINUX_X64).id());
+    assertNotEquals(id, new BunExtractionManifest(List.of("*/bun", "bun")).id());
+    assertNotEquals(id, BunExtractionManifest.ALL.id());
+  }
+
+  @Test
+  void needsAPattern() {
+    assertThrows(IllegalArgumentException.class, () -> new BunExtractionManifest(List.of()));
+  }
+
+  @Test
+  void streamExtractionReportsWhatWasSkipped() throws IOException {
+    final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(zip)) {
+      out.putNextEntry(new ZipEntry("bun-linux-x64/"));
+      for (String name : List.of("bun", "README.md", "LICENSE", "a.d.ts", "b.d.ts", "c.d.ts", "d.d.ts")) {
+        out.putNextEntry(new ZipEntry("bun-linux-x64/" + name));
+        out.write(name.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    final Path destination = dir.resolve("out");
+
+    final BunZipExtractor.Report report = BunHelpers.unzip(new ByteArrayInputStream(zip.toByteArray()), destination.toFile(), BunExtractionManifest.forSystem(BunSystem.LINUX_X64));
+
+    assertEquals("bun", Files.readString(destination.resolve("bun-linux-x64/bun")));
+    assertFalse(Files.exists(destination.resolve("bun-linux-x64/README.md")));
+    assertEquals(6, report.skippedCount());
+    // Only the first five skipped names are listed
+    assertEquals("1 of 7 files (0.0 MiB), skipped 6 (0.0 MiB): bun-linux-x64/README.md, bun-linux-x64/LICENSE, bun-linux-x64/a.d.ts, bun-linux-x64/b.d.ts, bun-linux-x64/c.d.ts, ...", report.describe());
+  }
+}
@@ -0,0 +1,199 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunInstallServiceTest {
+  private static final String VERSION = "1.0.0";
+  private static final int THREADS = 8;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void concurrentCommitsOfTheSameArchiveKeepOneEntry() throws Exception {
+    final File mirror = dir.resolve("mirror").toFile();
+    TestDistributions.release(mirror, VERSION);
+    final File zip = new File(mirror, "bun-v" + VERSION + File.separator + TestDistributions.SYSTEM.zipName());
+    final String sha256 = BunDownloaderTest.sha256(Files.readAllBytes(zip.toPath()));
+    final BunDistributionCache cache = new BunDistributionCache(dir.resolve("cache").toFile());
+
+    // No lock is taken here, so every thread extracts and races to commit the same entry
+    final List<File> entries = concurrently(i -> cache.store(VERSION, TestDistributions.SYSTEM, zip, sha256, BunExtractionManifest.forSystem(TestDistributions.SYSTEM)));
+
+    assertEquals(1, new HashSet<>(entries).size());
+    assertEquals(List.of(entries.get(0)), entriesOf(cache));
+    assertTrue(new File(entries.get(0), BunDistributionCache.COMPLETE_MARKER).isFile());
+  }
+
+  @Test
+  void concurrentBuildsInstallFromOneCacheEntry() throws Exception {
+    final File mirror = dir.resolve("mirror").toFile();
+    final byte[] executable = TestDistributions.release(mirror, VERSION);
+    final File cacheDir = dir.resolve("cache").toFile();
+    final List<BunInstallService> services = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      services.add(TestDistributions.service(dir.resolve("project" + i).toFile(), cacheDir));
+    }
+
+    // Two builds share each root, and streaming and downloading installs race for the same entry
+    final List<File> installed = concurrently(i -> services.get(i).install(dir.resolve("root" + i % (THREADS / 2)).toFile(), VERSION, TestDistributions.SYSTEM, TestDistributions.settings(mirror, i % 2 == 0)));
+
+    assertEquals(THREADS / 2, new HashSet<>(installed).size());
+    for (File exe : installed) {
+      assertArrayEquals(executable, Files.readAllBytes(exe.toPath()));
+      assertTrue(exe.canExecute());
+      assertTrue(BunInstallation.read(exe.getParentFile()).isPresent(), "no install.json next to " + exe);
+    }
+    assertEquals(1, entriesOf(new BunDistributionCache(cacheDir)).size());
+  }
+
+  @Test
+  void concurrentDaemonsInstallFromOneCacheEntry() throws Exception {
+    final File mirror = dir.resolve("mirror").toFile();
+    final byte[] executable = TestDistributions.release(mirror, VERSION);
+    final File cacheDir = dir.resolve("cache").toFile();
+    final File bunRoot = dir.resolve("root").toFile();
+    final String java = new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath();
+
+    final List<Process> processes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final File log = dir.resolve("worker" + i + ".log").toFile();
+      // ProjectBuilder defines classes in java.lang, as Gradle's own test workers allow
+      processes.add(new ProcessBuilder(java, "--add-opens=java.base/java.lang=ALL-UNNAMED", "-cp", System.getProperty("java.class.path"), InstallWorker.class.getName(), dir.resolve("worker" + i).toString(), cacheDir.getPath(), bunRoot.getPath(), mirror.getPath(), VERSION).redirectErrorStream(true).redirectOutput(log).start());
+    }
+    for (int i = 0; i < processes.size(); i++) {
+      final Path log = dir.resolve("worker" + i + ".log");
+      assertTrue(processes.get(i).waitFor(2, TimeUnit.MINUTES), "worker " + i + " did not finish");
+      assertEquals(0, processes.get(i).exitValue(), () -> "worker failed:\n" + read(log));
+    }
+
+    final File exe = BunInstallation.locate(BunInstallation.platformDir(bunRoot, VERSION, TestDistributions.SYSTEM), VERSION, TestDistributions.SYSTEM).orElseThrow();
+    assertArrayEquals(executable, Files.readAllBytes(exe.toPath()));
+    assertEquals(1, entriesOf(new BunDistributionCache(cacheDir)).size());
+  }
+
+  @Test
+  void streamingWithoutAnExpectedDigestCommitsNothing() throws Exception {
+    final File mirror = dir.resolve("mirror").toFile();
+    TestDistributions.release(mirror, VERSION);
+    Files.delete(mirror.toPath().resolve("bun-v" + VERSION).resolve(BunChecksums.MANIFEST_NAME));
+    final File cacheDir = dir.resolve("cache").toFile();
+    final BunInstallService service = TestDistributions.service(dir.resolve("project").toFile(), cacheDir);
+
+    assertThrows(Exception.class, () -> service.install(dir.resolve("root").toFile(), VERSION, TestDistributions.SYSTEM, TestDistributions.settings(mirror, true)));
+    assertThrows(IllegalArgumentException.class, () -> new BunDistributionCache(cacheDir).storeStream(VERSION, TestDistributions.SYSTEM, InputStream.nullInputStream(), null, BunExtractionManifest.forSystem(TestDistributions.SYSTEM)));
+
+    assertEquals(List.of(), entriesOf(new BunDistributionCache(cacheDir)));
+  }
+
+  @Test
+  void failsWithoutAChecksumUnlessUnverifiedInstallsAreAllowed() throws Exception {
+    final File mirror = dir.resolve("mirror").toFile();
+    final byte[] executable = TestDistributions.release(mirror, VERSION);
+    Files.delete(mirror.toPath().resolve("bun-v" + VERSION).resolve(BunChecksums.MANIFEST_NAME));
+    final File cacheDir = dir.resolve("cache").toFile();
+    final BunInstallService service = TestDistributions.service(dir.resolve("project").toFile(), cacheDir);
+    final File bunRoot = dir.resolve("root").toFile();
+
+    final IOException failure = assertThrows(IOException.class, () -> service.install(bunRoot, VERSION, TestDistributions.SYSTEM, TestDistributions.settings(mirror, false)));
+    assertTrue(failure.getMessage().contains(BunChecksums.MANIFEST_NAME), failure.getMessage());
+    assertEquals(List.of(), entriesOf(new BunDistributionCache(cacheDir)));
+
+    final File exe = service.install(bunRoot, VERSION, TestDistributions.SYSTEM, TestDistributions.settings(mirror, false, true));
+    assertArrayEquals(executable, Files.readAllBytes(exe.toPath()));
+    final List<File> entries = entriesOf(new BunDistributionCache(cacheDir));
+    assertEquals(1, entries.size());
+    assertFalse(BunDistributionCache.isVerified(entries.get(0)));
+
+    // The unverified entry is not reused by a build that requires verification
+    final BunInstallService next = TestDistributions.service(dir.resolve("next").toFile(), cacheDir);
+    assertThrows(IOException.class, () -> next.install(dir.resolve("root2").toFile(), VERSION, TestDistributions.SYSTEM, TestDistributions.settings(mirror, false)));
+  }
+
+  /// Runs `task` on [#THREADS] threads released at the same moment.
+  private static <T> List<T> concurrently(final IndexedTask<T> task) throws Exception {
+    final CyclicBarrier start = new CyclicBarrier(THREADS);
+    final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<T>> futures = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        final int index = i;
+        futures.add(pool.submit((Callable<T>) () -> {
+          start.await();
+          return task.run(index);
+        }));
+      }
+
+      final List<T> results = new ArrayList<>();
+      for (Future<T> future : futures) {
+        results.add(future.get(2, TimeUnit.MINUTES));
+      }
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /// Returns the entries of the cache, failing on leftovers of interrupted commits.
+  private static List<File> entriesOf(final BunDistributionCache cache) {
+    final File[] files = cache.systemDir(VERSION, TestDistributions.SYSTEM).listFiles();
+    final List<File> entries = new ArrayList<>();
+    final Set<String> leftovers = new HashSet<>();
+    for (File file : files == null ? new File[0] : files) {
+      if (file.getName().startsWith(".staging-")) {
+        leftovers.add(file.getName());
+      } else if (file.isDirectory()) {
+        entries.add(file);
+      }
+    }
+    assertEquals(Set.of(), leftovers);
+    return entries;
+  }
+
+  private static String read(final Path file) {
+    try {
+      return Files.readString(file);
+    } catch (IOException e) {
+      return e.toString();
+    }
+  }
+
+  @FunctionalInterface
+  private interface IndexedTask<T> {
+    T run(int index) throws Exception;
+  }
+
+  /// Installs Bun in a separate JVM, as a build in another Gradle daemon would.
+  ///
+  /// Arguments: project directory, cache directory, Bun root, mirror directory and version.
+  public static final class InstallWorker {
+    public static void main(final String[] args) throws IOException {
+      final BunInstallService service = TestDistributions.service(new File(args[0]), new File(args[1]));
+      service.install(new File(args[2]), args[4], TestDistributions.SYSTEM, TestDistributions.settings(new File(args[3]), false));
+      System.exit(0);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunRetryPolicyTest {
+  private static final byte[] CONTENT = new byte[3 * 1024 * 1024];
+
+  static {
+    new Random(7).nextBytes(CONTENT);
+  }
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void retriesServerErrorsUntilTheServerRecovers() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.failWith(request -> request <= 2 ? 503 : 0);
+      final File destination = dir.resolve("bun.zip").toFile();
+
+      final BunDownloader.Result result = BunDownloaderTest.downloader(1, 3).download(server.uri(), destination);
+
+      assertEquals(BunDownloaderTest.sha256(CONTENT), result.sha256());
+      // Two failed probes, the probe that succeeded and the single range
+      assertEquals(4, server.requests());
+    }
+  }
+
+  @Test
+  void givesUpAfterTheLastAttempt() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.failWith(request -> 503);
+
+      final BunHttpTransport.HttpStatusException failure = assertThrows(BunHttpTransport.HttpStatusException.class, () -> BunDownloaderTest.downloader(1, 3).download(server.uri(), dir.resolve("bun.zip").toFile()));
+
+      assertEquals(503, failure.statusCode());
+      assertEquals(3, server.requests());
+    }
+  }
+
+  @Test
+  void doesNotRetryClientErrors() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      server.failWith(request -> 404);
+
+      assertThrows(BunHttpTransport.HttpStatusException.class, () -> BunDownloaderTest.downloader(1, 3).download(server.uri(), dir.resolve("bun.zip").toFile()));
+
+      assertEquals(1, server.requests());
+    }
+  }
+
+  @Test
+  void continuesABrokenRangeFromTheLastByteReceived() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(CONTENT)) {
+      final long chunk = 1024 * 1024;
+      server.truncateRangesAfter(chunk);
+      final File destination = dir.resolve("bun.zip").toFile();
+
+      final BunDownloader.Result result = BunDownloaderTest.downloader(1, 6).download(server.uri(), destination);
+
+      assertEquals(BunDownloaderTest.sha256(CONTENT), result.sha256());
+      assertArrayEquals(CONTENT, Files.readAllBytes(destination.toPath()));
+      assertEquals("bytes=0-0", server.ranges().get(0));
+      assertEquals("bytes=0-" + (CONTENT.length - 1), server.ranges().get(1));
+      // Every retry asks only for the bytes not received yet; the server cuts each one off after a chunk
+      long previous = 0;
+      for (String range : server.ranges().subList(2, server.ranges().size())) {
+        final long from = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+        assertTrue(from > previous && from <= previous + chunk, "unexpected retry " + range);
+        assertTrue(range.endsWith("-" + (CONTENT.length - 1)), "unexpected retry " + range);
+        previous = from;
+      }
+      assertTrue(server.ranges().size() >= 4, "the broken range was not retried: " + server.ranges());
+    }
+  }
+
+  @Test
+  void stopsRetryingOnceTheDeadlinePassed() {
+    final BunRetryPolicy policy = new BunRetryPolicy(100, Duration.ofMillis(20), Duration.ofMillis(20), Duration.ofMillis(200));
+    final BunRetryPolicy.Budget budget = policy.begin();
+    final int[] attempts = {0};
+
+    assertThrows(IOException.class, () -> budget.call("Flaky operation", attempt -> {
+      attempts[0]++;
+      throw new IOException("Connection reset");
+    }));
+
+    assertTrue(attempts[0] > 1, "the failure was not retried");
+    assertTrue(attempts[0] < 100, "the deadline did not stop the retries");
+  }
+
+  @Test
+  void classifiesFailures() {
+    assertTrue(BunRetryPolicy.isRetryable(new BunHttpTransport.HttpStatusException(503, "Service Unavailable")));
+    assertTrue(BunRetryPolicy.isRetryable(new BunHttpTransport.HttpStatusException(429, "Too Many Requests")));
+    assertTrue(BunRetryPolicy.isRetryable(new IOException("Connection reset")));
+    assertFalse(BunRetryPolicy.isRetryable(new BunHttpTransport.HttpStatusException(404, "Not Found")));
+    assertFalse(BunRetryPolicy.isRetryable(new BunRetryPolicy.DeadlineExceededException("Too late")));
+  }
+}
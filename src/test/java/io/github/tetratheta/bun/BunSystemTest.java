@@ -0,0 +1,95 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BunSystemTest {
+  private static final String AVX2_FLAGS = "flags\t\t: fpu vme sse4_2 avx avx2 bmi2";
+  private static final String BASELINE_FLAGS = "flags\t\t: fpu vme sse4_2 avx";
+  private static final String MUSL_MAPPING = "7f1c2a000000-7f1c2a015000 r--p 00000000 08:01 131 /lib/ld-musl-x86_64.so.1";
+  private static final String GLIBC_MAPPING = "7f1c2a000000-7f1c2a028000 r--p 00000000 08:01 131 /usr/lib/x86_64-linux-gnu/libc.so.6";
+
+  @Test
+  void detectsTheOptimizedGlibcBuildWithAvx2() {
+    assertEquals(BunSystem.LINUX_X64, BunSystem.detect(new Host("Linux", "amd64").file("/proc/cpuinfo", "processor\t: 0", AVX2_FLAGS).file("/proc/self/maps", GLIBC_MAPPING)));
+  }
+
+  @Test
+  void detectsTheBaselineGlibcBuildWithoutAvx2() {
+    assertEquals(BunSystem.LINUX_X64_BASELINE, BunSystem.detect(new Host("Linux", "amd64").file("/proc/cpuinfo", BASELINE_FLAGS).file("/proc/self/maps", GLIBC_MAPPING)));
+  }
+
+  @Test
+  void detectsTheBaselineBuildWhenTheCpuFlagsCannotBeRead() {
+    assertEquals(BunSystem.LINUX_X64_BASELINE, BunSystem.detect(new Host("Linux", "x86_64")));
+  }
+
+  @Test
+  void readsTheFlagsOfTheFirstCpuAsWholeWords() {
+    // "avx2" only as part of another flag, and listed for a later CPU only
+    assertEquals(BunSystem.LINUX_X64_BASELINE, BunSystem.detect(new Host("Linux", "amd64").file("/proc/cpuinfo", "flags\t\t: fpu avx2x", "flags\t\t: fpu avx2")));
+  }
+
+  @Test
+  void detectsTheMuslBuildsFromTheLoadedDynamicLinker() {
+    assertEquals(BunSystem.LINUX_X64_MUSL, BunSystem.detect(new Host("Linux", "amd64").file("/proc/cpuinfo", AVX2_FLAGS).file("/proc/self/maps", MUSL_MAPPING)));
+    assertEquals(BunSystem.LINUX_X64_MUSL_BASELINE, BunSystem.detect(new Host("Linux", "amd64").file("/proc/cpuinfo", BASELINE_FLAGS).file("/proc/self/maps", MUSL_MAPPING)));
+    assertEquals(BunSystem.LINUX_AARCH64_MUSL, BunSystem.detect(new Host("Linux", "aarch64").file("/proc/self/maps", "ffff8a000000-ffff8a0a0000 r-xp 00000000 08:01 131 /lib/libc.musl-aarch64.so.1")));
+  }
+
+  @Test
+  void detectsMuslFromTheAlpineReleaseFileWithoutProc() {
+    assertEquals(BunSystem.LINUX_X64_MUSL_BASELINE, BunSystem.detect(new Host("Linux", "amd64").file("/etc/alpine-release", "3.20.3")));
+  }
+
+  @Test
+  void detectsGlibcOnArm64() {
+    assertEquals(BunSystem.LINUX_AARCH64, BunSystem.detect(new Host("Linux", "aarch64").file("/proc/self/maps", GLIBC_MAPPING)));
+  }
+
+  @Test
+  void doesNotProbeFilesOutsideLinux() {
+    assertEquals(BunSystem.WINDOWS_X64, BunSystem.detect(new Host("Windows 11", "amd64").file("/proc/cpuinfo", BASELINE_FLAGS)));
+    assertEquals(BunSystem.DARWIN_AARCH64, BunSystem.detect(new Host("Mac OS X", "aarch64")));
+    assertEquals(BunSystem.DARWIN_X64, BunSystem.detect(new Host("Mac OS X", "x86_64").file("/etc/alpine-release", "3.20.3")));
+  }
+
+  @Test
+  void rejectsUnsupportedHosts() {
+    assertThrows(IllegalStateException.class, () -> BunSystem.detect(new Host("Linux", "riscv64")));
+    assertThrows(IllegalStateException.class, () -> BunSystem.detect(new Host("FreeBSD", "amd64")));
+  }
+
+  /// A host described by its system properties and the lines of the files detection reads.
+  private static final class Host implements BunHostProbe {
+    private final Map<String, String> properties;
+    private final Map<String, List<String>> files = new HashMap<>();
+
+    Host(final String os, final String arch) {
+      this.properties = Map.of("os.name", os, "os.arch", arch);
+    }
+
+    Host file(final String path, final String... lines) {
+      files.put(path, List.of(lines));
+      return this;
+    }
+
+    @Override
+    public String property(final String name) {
+      return properties.getOrDefault(name, "");
+    }
+
+    @Override
+    public Optional<String> findLine(final String file, final Predicate<String> matcher) {
+      return files.getOrDefault(file, List.of()).stream().filter(matcher).findFirst();
+    }
+  }
+}
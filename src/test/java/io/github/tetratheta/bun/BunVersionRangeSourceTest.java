@@ -0,0 +1,137 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunVersionRangeSourceTest {
+  private static final Duration DAY = Duration.ofDays(1);
+
+  @TempDir
+  Path dir;
+
+  private File index;
+
+  @BeforeEach
+  void indexFile() {
+    index = dir.resolve("releases.properties").toFile();
+  }
+
+  @Test
+  void revalidatesAnExpiredIndexWithItsETag() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(releases("1.2.0", "1.1.3", "1.1.0", "1.0.9"))) {
+      assertEquals("1.1.3", resolve(server, "1.1.x", DAY));
+      assertEquals(1, server.requests());
+      assertEquals("\"v1\"", pin().etag());
+
+      // Within the TTL, the index answers without a request
+      assertEquals("1.2.0", resolve(server, "^1.1", DAY));
+      assertEquals(1, server.requests());
+
+      // Once it expires, If-None-Match is answered with 304 and the index is only renewed
+      assertEquals("1.0.9", resolve(server, "1.0.x", Duration.ZERO));
+      assertEquals(2, server.requests());
+      assertEquals("1.2.0,1.1.3,1.1.0,1.0.9", pin().value());
+      assertEquals("\"v1\"", pin().etag());
+
+      // A changed first page is fetched again, with its new ETag
+      server.etag("\"v2\"");
+      assertEquals("1.1.3", resolve(server, "1.1.x", Duration.ZERO));
+      assertEquals(3, server.requests());
+      assertEquals("\"v2\"", pin().etag());
+    }
+  }
+
+  @Test
+  void refreshesAFreshIndexThatMatchesNothing() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(releases("1.1.3", "1.1.0"))) {
+      assertEquals("1.1.3", resolve(server, "1.x", DAY));
+
+      // The range may ask for a release published since, so a fresh index is revalidated
+      final IllegalStateException failure = assertThrows(IllegalStateException.class, () -> resolve(server, "^2", DAY));
+      assertTrue(failure.getMessage().contains("No Bun release matches \"^2\""), failure.getMessage());
+      assertEquals(2, server.requests());
+    }
+  }
+
+  @Test
+  void keepsUsingTheIndexWhenTheRefreshFails() throws IOException {
+    try (TestHttpServer server = new TestHttpServer(releases("1.1.3", "1.1.0"))) {
+      assertEquals("1.1.3", resolve(server, "1.1.x", DAY));
+      server.failWith(request -> 404);
+
+      assertEquals("1.1.0", resolve(server, "~1.1.0 <1.1.1", Duration.ZERO));
+      assertEquals(2, server.requests());
+      assertNotNull(pin().failed());
+
+      // The failure backs off further checks, even for a range that matches nothing
+      assertThrows(IllegalStateException.class, () -> resolve(server, "^2", Duration.ofHours(2)));
+      assertEquals(2, server.requests());
+
+      server.failWith(request -> 0);
+      assertEquals("1.1.3", resolve(server, "1.1.x", Duration.ZERO));
+      assertNull(pin().failed());
+    }
+  }
+
+  @Test
+  void needsAnIndexWhileOffline() {
+    final IllegalStateException failure = assertThrows(IllegalStateException.class, () -> source("1.1.x", DAY, true, null).obtain());
+
+    assertTrue(failure.getMessage().contains("while offline"), failure.getMessage());
+  }
+
+  private String resolve(final TestHttpServer server, final String range, final Duration ttl) {
+    return source(range, ttl, false, server).obtain();
+  }
+
+  private BunPin pin() {
+    return BunPin.read(index, "versions").orElseThrow();
+  }
+
+  /// Creates the value source as the plugin would, against the releases API of `server`.
+  private BunVersionRangeSource source(final String range, final Duration ttl, final boolean offline, final TestHttpServer server) {
+    final Project project = ProjectBuilder.builder().withProjectDir(dir.toFile()).build();
+    final BunVersionRangeSource.Params params = project.getObjects().newInstance(BunVersionRangeSource.Params.class);
+    params.getRange().set(range);
+    params.getIndexFile().set(index);
+    params.getTtl().set(ttl);
+    params.getDisableSslVerification().set(false);
+    params.getConnectTimeout().set(Duration.ofSeconds(5));
+    params.getReadTimeout().set(Duration.ofSeconds(5));
+    params.getIdleTimeout().set(Duration.ofSeconds(5));
+    params.getRetryPolicy().set(new BunRetryPolicy(1, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofSeconds(30)));
+    params.getOffline().set(offline);
+    if (server != null) {
+      params.getReleasesApi().set(server.uri().resolve("/repos/oven-sh/bun/releases"));
+    }
+
+    return new BunVersionRangeSource() {
+      @Override
+      public Params getParameters() {
+        return params;
+      }
+    };
+  }
+
+  /// A first and only page of the releases API, newest first.
+  private static byte[] releases(final String... versions) {
+    return Stream.of(versions).map(v -> "{\"tag_name\": \"bun-v" + v + "\", \"draft\": false}").collect(Collectors.joining(",\n", "[\n", "\n]")).getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,119 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunVersionRangeTest {
+  @ParameterizedTest(name = "{0} matches {1}")
+  @CsvSource(delimiter = ';', value = {
+    // Caret with zero majors: the first non-zero part given is fixed
+    "^1.2.3 ; 1.2.3 1.9.0 ; 1.2.2 2.0.0",
+    "^0.2.3 ; 0.2.3 0.2.9 ; 0.2.2 0.3.0",
+    "^0.0.3 ; 0.0.3 ; 0.0.2 0.0.4 0.1.0",
+    "^0.0 ; 0.0.0 0.0.9 ; 0.1.0",
+    "^1.2 ; 1.2.0 1.9.9 ; 1.1.9 2.0.0",
+    // Tilde fixes the minor when it is given, else the major
+    "~1.2.3 ; 1.2.3 1.2.9 ; 1.2.2 1.3.0",
+    "~0.2 ; 0.2.0 0.2.9 ; 0.1.9 0.3.0",
+    "~1 ; 1.0.0 1.9.9 ; 0.9.9 2.0.0",
+    // Partials and wildcards
+    "1.x ; 1.0.0 1.9.9 ; 0.9.9 2.0.0",
+    "1.1 ; 1.1.0 1.1.9 ; 1.0.9 1.2.0",
+    "1.1.* ; 1.1.0 1.1.9 ; 1.2.0",
+    "* ; 0.0.1 1.2.3 99.0.0 ; 1.2.3-canary.1",
+    "v1.X ; 1.5.0 ; 2.0.0",
+    // Comparators, partial ones compare against the whole covered range
+    ">1.1 ; 1.2.0 ; 1.1.9",
+    ">=1.1 ; 1.1.0 2.0.0 ; 1.0.9",
+    "<1.1 ; 1.0.9 ; 1.1.0",
+    "<=1.1 ; 1.1.9 ; 1.2.0",
+    "=1.1.0 ; 1.1.0 ; 1.1.1",
+    ">=1.1 <1.2 ; 1.1.0 1.1.9 ; 1.0.9 1.2.0",
+    ">= 1.1.2 <= 1.1.4 ; 1.1.2 1.1.4 ; 1.1.1 1.1.5",
+    // Alternatives
+    "1.0.x || 1.2.x ; 1.0.5 1.2.0 ; 1.1.0 1.3.0",
+    "<1.0.0 || >=2.0.0 <2.1 || 3 ; 0.9.0 2.0.9 3.4.5 ; 1.0.0 2.1.0",
+    // Pre-releases only match ranges that mention one
+    ">=1.2.0-beta.2 ; 1.2.0-beta.2 1.2.0-beta.10 1.2.0 ; 1.2.0-beta.1 1.2.0-alpha",
+    "^1.1 ; 1.1.0 ; 1.2.0-canary.1",
+  })
+  void matchesTheVersionsOfTheRange(final String range, final String matching, final String other) {
+    final BunVersionRange parsed = BunVersionRange.parse(range);
+
+    for (String version : matching.split(" ")) {
+      assertTrue(parsed.matches(version), range + " should match " + version);
+    }
+    for (String version : other.split(" ")) {
+      assertFalse(parsed.matches(version), range + " should not match " + version);
+    }
+  }
+
+  @Test
+  void wildcardComparatorsMatchEverythingOrNothing() {
+    assertTrue(BunVersionRange.parse(">=*").matches("0.0.0"));
+    assertFalse(BunVersionRange.parse("<*").matches("0.0.0"));
+    assertFalse(BunVersionRange.parse("<*").matches("1.2.3"));
+    assertFalse(BunVersionRange.parse(">*").matches("1.2.3"));
+  }
+
+  @Test
+  void doesNotMatchUnparsableVersions() {
+    final BunVersionRange any = BunVersionRange.parse("*");
+
+    assertFalse(any.matches("1.2"));
+    assertFalse(any.matches("canary"));
+    assertFalse(any.matches("99999999999.0.0"));
+  }
+
+  @Test
+  void ordersPreReleasesBySemverPrecedence() {
+    final List<String> ordered = List.of("1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.0.1-alpha", "1.0.1");
+    final List<BunVersionRange.Version> versions = new ArrayList<>(ordered.stream().map(v -> BunVersionRange.Version.parse(v).orElseThrow()).toList());
+    Collections.reverse(versions);
+
+    Collections.sort(versions);
+
+    assertEquals(ordered, versions.stream().map(v -> v.major() + "." + v.minor() + "." + v.patch() + (v.prerelease() == null ? "" : "-" + v.prerelease())).toList());
+    // Build metadata does not take part
+    assertEquals(0, BunVersionRange.Version.parse("1.0.0+abc").orElseThrow().compareTo(BunVersionRange.Version.parse("v1.0.0").orElseThrow()));
+  }
+
+  @Test
+  void picksTheHighestMatchingVersion() {
+    final List<String> versions = List.of("1.2.0-canary.1", "1.1.10", "1.1.9", "1.1.0", "1.0.9");
+
+    assertEquals(Optional.of("1.1.10"), BunVersionRange.parse("1.1.x").best(versions));
+    assertEquals(Optional.of("1.0.9"), BunVersionRange.parse("<1.1").best(versions));
+    assertEquals(Optional.empty(), BunVersionRange.parse("^2").best(versions));
+  }
+
+  @Test
+  void tellsRangesFromExactVersions() {
+    assertFalse(BunVersionRange.isRange("1.1.0"));
+    assertFalse(BunVersionRange.isRange("1.2.0-beta.1"));
+    assertFalse(BunVersionRange.isRange(BunHelpers.LATEST));
+    assertTrue(BunVersionRange.isRange("1.1"));
+    assertTrue(BunVersionRange.isRange("^1.1.0"));
+    assertTrue(BunVersionRange.isRange("1.0.x || 1.1.x"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "  ", "1.1.x ||", "|| 1.1.x", "abc", "1..2", "1.2.3.4", "=>1.1", "1.1 - 1.2", "99999999999.x", "1.99999999999", "^1.2.99999999999", "2147483647.x"})
+  void rejectsMalformedRanges(final String range) {
+    final IllegalArgumentException failure = assertThrows(IllegalArgumentException.class, () -> BunVersionRange.parse(range));
+
+    assertTrue(failure.getMessage().startsWith("Invalid Bun version range \"" + range + "\""), failure.getMessage());
+  }
+}
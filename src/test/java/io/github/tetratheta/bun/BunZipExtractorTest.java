@@ -0,0 +1,170 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BunZipExtractorTest {
+  @TempDir
+  Path dir;
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 4})
+  void extractsEveryEntry(final int threads) throws IOException {
+    final Map<String, byte[]> files = new LinkedHashMap<>();
+    files.put("bun-linux-x64/bun", random(3 * 1024 * 1024, 1));
+    files.put("bun-linux-x64/README.md", "# Bun\n".getBytes(StandardCharsets.UTF_8));
+    files.put("bun-linux-x64/empty", new byte[0]);
+    for (int i = 0; i < 40; i++) {
+      files.put("bun-linux-x64/lib/deep/file-" + i + ".js", random(1 + i * 997, i));
+    }
+    final File zip = zip(files, List.of("bun-linux-x64/", "bun-linux-x64/docs/"), "bun-linux-x64/README.md");
+    final Path destination = dir.resolve("out");
+
+    final BunZipExtractor.Report report = new BunZipExtractor(threads).extract(zip, destination.toFile());
+
+    for (Map.Entry<String, byte[]> file : files.entrySet()) {
+      assertArrayEquals(file.getValue(), Files.readAllBytes(destination.resolve(file.getKey())), file.getKey());
+    }
+    assertTrue(Files.isDirectory(destination.resolve("bun-linux-x64/docs")));
+    assertEquals(0, report.skippedCount());
+    assertTrue(report.describe().startsWith(files.size() + " of " + files.size() + " files"), report.describe());
+  }
+
+  @Test
+  void extractsOnlyTheManifestAndReportsTheRest() throws IOException {
+    final Map<String, byte[]> files = new LinkedHashMap<>();
+    files.put("bun-linux-x64/bun", random(1024, 1));
+    files.put("bun-linux-x64/README.md", random(2048, 2));
+    files.put("bun-linux-x64/LICENSE", random(2048, 3));
+    final Path destination = dir.resolve("out");
+
+    final BunZipExtractor.Report report = new BunZipExtractor(2).extract(zip(files, List.of(), null), destination.toFile(), BunExtractionManifest.forSystem(BunSystem.LINUX_X64));
+
+    assertTrue(Files.isRegularFile(destination.resolve("bun-linux-x64/bun")));
+    assertFalse(Files.exists(destination.resolve("bun-linux-x64/README.md")));
+    assertEquals(2, report.skippedCount());
+    assertEquals("1 of 3 files (0.0 MiB), skipped 2 (0.0 MiB): bun-linux-x64/README.md, bun-linux-x64/LICENSE", report.describe());
+  }
+
+  @Test
+  void trimsFilesWhoseRecordedSizeIsTooLarge() throws IOException {
+    final byte[] content = random(1024 * 1024, 4);
+    final File zip = zip(Map.of("bun", content), List.of(), null);
+    // The output is preallocated to the recorded size, so an overstated size must be trimmed afterwards
+    setCentralDirectorySize(zip, content.length + 5000);
+
+    new BunZipExtractor(1).extract(zip, dir.resolve("out").toFile());
+
+    assertArrayEquals(content, Files.readAllBytes(dir.resolve("out/bun")));
+  }
+
+  @Test
+  void rejectsEntriesOutsideTheDestination() throws IOException {
+    final Path destination = dir.resolve("nested/out");
+
+    for (String name : List.of("../evil.txt", "bun/../../evil.txt", "bun/../../../evil.txt")) {
+      final File zip = zip(Map.of("bun/ok", new byte[]{1}, name, new byte[]{2}), List.of(), null);
+      final IOException failure = assertThrows(IOException.class, () -> new BunZipExtractor(2).extract(zip, destination.toFile()));
+      assertTrue(failure.getMessage().contains(name), failure.getMessage());
+    }
+
+    assertFalse(Files.exists(dir.resolve("nested/evil.txt")));
+    assertFalse(Files.exists(dir.resolve("evil.txt")));
+  }
+
+  @Test
+  void resolvesNamesBelowTheRoot() throws IOException {
+    final Path root = dir.toAbsolutePath().normalize();
+
+    assertEquals(root.resolve("a/c"), BunZipExtractor.resolve(root, new ZipEntry("a/./b/../c")));
+    assertEquals(root.resolve("a"), BunZipExtractor.resolve(root, new ZipEntry("a/")));
+    assertThrows(IOException.class, () -> BunZipExtractor.resolve(root, new ZipEntry("a/../../x")));
+    assertThrows(IOException.class, () -> BunZipExtractor.resolve(root, new ZipEntry("/etc/passwd")));
+  }
+
+  @Test
+  void schedulesTheLargestEntriesFirst() {
+    final List<ZipEntry> files = new ArrayList<>();
+    for (long size : new long[]{10, 5000, 1, 90_000_000, 300}) {
+      final ZipEntry entry = new ZipEntry("file-" + size);
+      entry.setCompressedSize(size);
+      files.add(entry);
+    }
+
+    BunZipExtractor.scheduleLargestFirst(files);
+
+    assertEquals(List.of("file-90000000", "file-5000", "file-300", "file-10", "file-1"), files.stream().map(ZipEntry::getName).toList());
+  }
+
+  @Test
+  void needsAtLeastOneWorker() {
+    assertThrows(IllegalArgumentException.class, () -> new BunZipExtractor(0));
+  }
+
+  /// Writes a deflated zip of `files` and `directories`; `stored` names one file written uncompressed.
+  private File zip(final Map<String, byte[]> files, final List<String> directories, final String stored) throws IOException {
+    final File zip = Files.createTempFile(dir, "archive", ".zip").toFile();
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+      for (String directory : directories) {
+        out.putNextEntry(new ZipEntry(directory));
+      }
+      for (Map.Entry<String, byte[]> file : files.entrySet()) {
+        final ZipEntry entry = new ZipEntry(file.getKey());
+        if (file.getKey().equals(stored)) {
+          final CRC32 crc = new CRC32();
+          crc.update(file.getValue());
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(file.getValue().length);
+          entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(file.getValue());
+      }
+    }
+    return zip;
+  }
+
+  /// Overwrites the uncompressed size of the only central directory entry of `zip`.
+  private static void setCentralDirectorySize(final File zip, final int size) throws IOException {
+    final byte[] bytes = Files.readAllBytes(zip.toPath());
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = bytes.length - 46; i >= 0; i--) {
+      if (buffer.getInt(i) == 0x02014b50) {
+        buffer.putInt(i + 24, size);
+        Files.write(zip.toPath(), bytes);
+        return;
+      }
+    }
+    throw new IllegalStateException("No central directory entry in " + zip);
+  }
+
+  private static byte[] random(final int size, final long seed) {
+    final byte[] bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
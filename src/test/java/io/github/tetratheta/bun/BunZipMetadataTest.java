@@ -0,0 +1,180 @@
+package io.github.tetratheta.bun;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BunZipMetadataTest {
+  private static final int DIR = 0040000;
+  private static final int FILE = 0100000;
+  private static final int LINK = 0120000;
+
+  @TempDir
+  Path dir;
+
+  private Path out;
+
+  @BeforeEach
+  void requirePosix() throws IOException {
+    assumeTrue(Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class), "needs POSIX file modes and symlinks");
+    out = dir.resolve("sandbox/out");
+    Files.createDirectories(out);
+  }
+
+  @Test
+  void restoresFileAndDirectoryModes() throws IOException {
+    final Archive archive = new Archive()
+      .dir("bun-linux-x64/", 0750)
+      .file("bun-linux-x64/bun", 0755, "#!/bin/sh")
+      .file("bun-linux-x64/README.md", 0600, "# Bun");
+
+    extract(archive);
+
+    assertEquals("rwxr-x---", modeOf(out.resolve("bun-linux-x64")));
+    assertEquals("rwxr-xr-x", modeOf(out.resolve("bun-linux-x64/bun")));
+    assertEquals("rw-------", modeOf(out.resolve("bun-linux-x64/README.md")));
+  }
+
+  @Test
+  void recreatesLinksIncludingLinksToLinks() throws IOException {
+    final Archive archive = new Archive()
+      .file("bun-linux-x64/bun", 0755, "runtime")
+      .link("bun-linux-x64/bunx", "bun")
+      .link("bun-linux-x64/lib/current", "../bunx")
+      .link("bun-linux-x64/self", ".");
+
+    extract(archive);
+
+    assertTrue(Files.isSymbolicLink(out.resolve("bun-linux-x64/bunx")));
+    assertEquals(Path.of("bun"), Files.readSymbolicLink(out.resolve("bun-linux-x64/bunx")));
+    assertEquals(Path.of("../bunx"), Files.readSymbolicLink(out.resolve("bun-linux-x64/lib/current")));
+    assertArrayEquals("runtime".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(out.resolve("bun-linux-x64/lib/current")));
+    assertEquals(out.resolve("bun-linux-x64").toRealPath(), out.resolve("bun-linux-x64/self").toRealPath());
+    // The link keeps its own mode, chmod never followed it to the executable
+    assertEquals("rwxr-xr-x", modeOf(out.resolve("bun-linux-x64/bun")));
+  }
+
+  @Test
+  void rejectsLinksLeavingTheDestinationByName() throws IOException {
+    assertEscapes(new Archive().link("evil", "../outside"));
+    assertEscapes(new Archive().link("evil", "/etc/passwd"));
+    assertEscapes(new Archive().link("a/b/evil", "../../../outside"));
+  }
+
+  @Test
+  void rejectsLinksLeavingTheDestinationThroughOtherLinks() throws IOException {
+    // Both targets stay inside by name, but `a` is the root itself, so `a/..` is its parent
+    assertEscapes(new Archive().link("a", ".").link("b", "a/../outside"));
+    // `x/y/l` leads to the root; `m` goes one level up from there
+    assertEscapes(new Archive().link("x/y/l", "../..").link("x/y/m", "l/../escape"));
+    // The same, with the escaping link listed before the one it goes through
+    assertEscapes(new Archive().link("x/y/m", "l/../escape").link("x/y/l", "../.."));
+  }
+
+  @Test
+  void rejectsLinkLoops() throws IOException {
+    final IOException failure = assertThrows(IOException.class, () -> extract(new Archive().link("a", "b/x").link("b", "a/y")));
+    assertTrue(failure.getMessage().contains("symlink"), failure.getMessage());
+  }
+
+  private void assertEscapes(final Archive archive) throws IOException {
+    final IOException failure = assertThrows(IOException.class, () -> extract(archive));
+    assertTrue(failure.getMessage().contains("outside of the destination directory"), failure.getMessage());
+    assertFalse(Files.exists(dir.resolve("sandbox/escape")));
+    deleteTree(out);
+    Files.createDirectories(out);
+  }
+
+  private void extract(final Archive archive) throws IOException {
+    final File zip = Files.createTempFile(dir, "archive", ".zip").toFile();
+    Files.write(zip.toPath(), archive.toBytes());
+    new BunZipExtractor(1).extract(zip, out.toFile());
+  }
+
+  private static String modeOf(final Path path) throws IOException {
+    return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+  }
+
+  private static void deleteTree(final Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  /// A zip whose central directory records Unix modes, as `zip` on Linux writes them.
+  private static final class Archive {
+    private final Map<String, Integer> modes = new LinkedHashMap<>();
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+    Archive dir(final String name, final int permissions) {
+      return add(name, DIR | permissions, new byte[0]);
+    }
+
+    Archive file(final String name, final int permissions, final String content) {
+      return add(name, FILE | permissions, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /// A symlink entry stores its target as the entry data.
+    Archive link(final String name, final String target) {
+      return add(name, LINK | 0777, target.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Archive add(final String name, final int mode, final byte[] content) {
+      modes.put(name, mode);
+      contents.put(name, content);
+      return this;
+    }
+
+    byte[] toBytes() throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+          zip.putNextEntry(new ZipEntry(entry.getKey()));
+          zip.write(entry.getValue());
+        }
+      }
+
+      // Mark every central directory entry as made on Unix and store its mode in the external attributes
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+      final List<String> names = List.copyOf(contents.keySet());
+      int pos = buffer.limit() - 22;
+      while (buffer.getInt(pos) != 0x06054b50) {
+        pos--;
+      }
+      pos = buffer.getInt(pos + 16);
+      for (String name : names) {
+        buffer.put(pos + 5, (byte) 3);
+        buffer.putInt(pos + 38, modes.get(name) << 16);
+        pos += 46 + Short.toUnsignedInt(buffer.getShort(pos + 28)) + Short.toUnsignedInt(buffer.getShort(pos + 30)) + Short.toUnsignedInt(buffer.getShort(pos + 32));
+      }
+      return buffer.array();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package io.github.tetratheta.bun;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/// Fake Bun releases in a local directory source, and install services outside of a Gradle build.
+final class TestDistributions {
+  static final BunSystem SYSTEM = BunSystem.LINUX_X64;
+
+  private TestDistributions() {
+  }
+
+  /// Writes `<mirror>/bun-v<version>/bun-linux-x64.zip` and its `SHASUMS256.txt`, returning the executable's content.
+  static byte[] release(final File mirror, final String version) throws IOException {
+    final byte[] executable = new byte[1024 * 1024];
+    new Random(version.hashCode()).nextBytes(executable);
+
+    final Path releaseDir = mirror.toPath().resolve("bun-v" + version);
+    Files.createDirectories(releaseDir);
+    final Path zip = releaseDir.resolve(SYSTEM.zipName());
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry(BunHelpers.stripZip(SYSTEM.zipName()) + "/"));
+      out.putNextEntry(new ZipEntry(BunHelpers.stripZip(SYSTEM.zipName()) + "/" + SYSTEM.exeName()));
+      out.write(executable);
+      out.putNextEntry(new ZipEntry(BunHelpers.stripZip(SYSTEM.zipName()) + "/README.md"));
+      out.write("not extracted by default".getBytes(StandardCharsets.UTF_8));
+    }
+
+    try (OutputStream out = Files.newOutputStream(releaseDir.resolve("SHASUMS256.txt"))) {
+      out.write((BunDownloaderTest.sha256(Files.readAllBytes(zip)) + "  " + SYSTEM.zipName() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    return executable;
+  }
+
+  /// Settings installing from the directory source `mirror` only.
+  static BunInstallService.Settings settings(final File mirror, final boolean streaming) {
+    return settings(mirror, streaming, false);
+  }
+
+  /// Settings installing from the directory source `mirror` only, optionally without a checksum.
+  static BunInstallService.Settings settings(final File mirror, final boolean streaming, final boolean allowUnverified) {
+    final BunRetryPolicy retry = new BunRetryPolicy(2, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMinutes(2));
+    return new BunInstallService.Settings(false, 1, streaming, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5), retry, List.of(BunDistributionSource.directory(mirror)), false, BunExtractionManifest.forSystem(SYSTEM), null, allowUnverified);
+  }
+
+  /// Creates an install service as a separate build would, using the shared cache at `cacheDir`.
+  static BunInstallService service(final File projectDir, final File cacheDir) {
+    final Project project = ProjectBuilder.builder().withProjectDir(projectDir).build();
+    final BunInstallService.Params params = project.getObjects().newInstance(BunInstallService.Params.class);
+    params.getCacheDir().set(cacheDir);
+    params.getRetention().set(new BunRetentionPolicy(BunRetentionPolicy.DEFAULT_MAX_UNUSED, BunRetentionPolicy.DEFAULT_MAX_VERSIONS, BunRetentionPolicy.DEFAULT_MAX_BYTES));
+
+    return new BunInstallService() {
+      @Override
+      public Params getParameters() {
+        return params;
+      }
+    };
+  }
+}
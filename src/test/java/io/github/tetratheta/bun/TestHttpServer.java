@@ -0,0 +1,129 @@
+package io.github.tetratheta.bun;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/// Local HTTP server serving one file, with optional range support, `ETag` revalidation and injected failures.
+final class TestHttpServer implements AutoCloseable {
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final byte[] content;
+  private final List<String> ranges = new CopyOnWriteArrayList<>();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private volatile boolean rangeSupport = true;
+  private volatile String etag = "\"v1\"";
+  private volatile IntUnaryOperator status = request -> 0;
+  private volatile long truncateRangesAfter = -1;
+
+  TestHttpServer(final byte[] content) throws IOException {
+    this.content = content;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  /// Returns the URI of the served file.
+  URI uri() {
+    return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/bun.zip");
+  }
+
+  /// Makes the server ignore `Range` headers and answer every request with the full body.
+  void ignoreRanges() {
+    rangeSupport = false;
+  }
+
+  /// Changes the `ETag`, as if the file had been replaced on the server.
+  void etag(final String value) {
+    etag = value;
+  }
+
+  /// Answers the `n`-th request (counting from 1) with the returned status instead, unless it is `0`.
+  void failWith(final IntUnaryOperator statusOfRequest) {
+    status = statusOfRequest;
+  }
+
+  /// Sends at most `bytes` of every range other than the probe, then drops the connection.
+  void truncateRangesAfter(final long bytes) {
+    truncateRangesAfter = bytes;
+  }
+
+  /// The `Range` headers of the requests so far, in arrival order.
+  List<String> ranges() {
+    return ranges;
+  }
+
+  /// The number of requests so far.
+  int requests() {
+    return requests.get();
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    try (exchange) {
+      exchange.getRequestBody().readAllBytes();
+      final int injected = status.applyAsInt(requests.incrementAndGet());
+      if (injected != 0) {
+        exchange.sendResponseHeaders(injected, -1);
+        return;
+      }
+
+      exchange.getResponseHeaders().add("ETag", etag);
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+
+      final String range = exchange.getRequestHeaders().getFirst("Range");
+      final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+      if (range != null) {
+        ranges.add(range);
+      }
+
+      final Matcher matcher = range == null ? null : RANGE.matcher(range);
+      if (!rangeSupport || matcher == null || !matcher.matches() || (ifRange != null && !ifRange.equals(etag))) {
+        exchange.sendResponseHeaders(200, content.length);
+        exchange.getResponseBody().write(content);
+        return;
+      }
+
+      final int from = Integer.parseInt(matcher.group(1));
+      final int to = Math.min(content.length - 1, Integer.parseInt(matcher.group(2)));
+      final int length = to - from + 1;
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+      exchange.sendResponseHeaders(206, length);
+
+      final OutputStream body = exchange.getResponseBody();
+      final long limit = truncateRangesAfter;
+      if (limit >= 0 && length > 1 && limit < length) {
+        body.write(content, from, (int) limit);
+        body.flush();
+        // Failing the exchange short of the announced length drops the connection mid-body
+        throw new IOException("Dropping the connection after " + limit + " bytes");
+      }
+      body.write(content, from, length);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}